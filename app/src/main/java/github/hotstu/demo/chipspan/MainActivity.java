@@ -1,18 +1,68 @@
 package github.hotstu.demo.chipspan;
 
 import android.os.Bundle;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.ListPopupWindow;
 import androidx.databinding.DataBindingUtil;
 import androidx.databinding.ViewDataBinding;
 
+import java.util.ArrayList;
+
+import github.hotstu.chipspan.ChipDrawableCache;
+import github.hotstu.chipspan.ChipSnapshot;
+import github.hotstu.chipspan.ChipSuggestions;
+
 public class MainActivity extends AppCompatActivity {
+    private static final String STATE_EDIT_CHIPS = "edit_chips";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        //用Activity预热，模板的主题与布局中的chip一致
+        ChipDrawableCache.get(this).prewarm(this, R.xml.custom_standalone_chip_action, R.xml.standalone_chip_entry);
         ViewDataBinding binding = DataBindingUtil.setContentView(this, R.layout.activity_main);
-        binding.setVariable(BR.viewModel, new MainViewModel());
+        MainViewModel viewModel = new MainViewModel();
+        binding.setVariable(BR.viewModel, viewModel);
         binding.executePendingBindings();
+        EditText editChips = findViewById(R.id.edit_chips);
+        setupSuggestions(editChips, viewModel);
+        //EditText自己保存的文本不包含ChipSpan，用快照恢复chip、id和测量好的尺寸
+        ChipSnapshot snapshot = savedInstanceState != null ? savedInstanceState.getParcelable(STATE_EDIT_CHIPS) : null;
+        if (snapshot != null) {
+            snapshot.restore(editChips);
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(STATE_EDIT_CHIPS, ChipSnapshot.of(findViewById(R.id.edit_chips)));
+    }
+
+    /**
+     * 输入框下方弹出补全，选中后把正在输入的文本换成chip
+     */
+    private void setupSuggestions(EditText editText, MainViewModel viewModel) {
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>());
+        ListPopupWindow popup = new ListPopupWindow(this);
+        popup.setAnchorView(editText);
+        popup.setAdapter(adapter);
+        ChipSuggestions suggestions = ChipSuggestions.attach(editText, viewModel.entry, (source, prefix, result) -> {
+            adapter.clear();
+            adapter.addAll(result);
+            if (result.isEmpty()) {
+                popup.dismiss();
+            } else {
+                popup.show();
+            }
+        }).setCandidates(viewModel.candidates);
+        popup.setOnItemClickListener((parent, view, position, id) -> {
+            suggestions.accept(adapter.getItem(position));
+            popup.dismiss();
+        });
     }
 }
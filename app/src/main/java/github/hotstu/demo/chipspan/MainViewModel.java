@@ -1,17 +1,22 @@
 package github.hotstu.demo.chipspan;
 
+import android.graphics.Rect;
 import android.text.TextUtils;
 import android.util.Log;
+import android.widget.EditText;
 
 import androidx.databinding.ObservableArrayList;
 import androidx.databinding.ObservableField;
 import androidx.lifecycle.ViewModel;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import github.hotstu.chipspan.ChipEditor;
 import github.hotstu.chipspan.ChipMovementMethod;
 import github.hotstu.chipspan.ChipSpan;
+import github.hotstu.chipspan.ChipSpanBindings;
 
 /**
  * @author hglf [hglf](https://github.com/hotstu)
@@ -23,23 +28,38 @@ public class MainViewModel extends ViewModel {
     public final ObservableArrayList<String> chips = new ObservableArrayList<>();
     public final ObservableArrayList<String> editChips = new ObservableArrayList<>();
     public final ObservableField<String> userInput = new ObservableField<>();
+    public final List<String> cloud = new ArrayList<>();
+    public final List<String> candidates = Arrays.asList("Android", "Angular", "Ansible", "iOS", "Java", "JavaScript",
+            "Kotlin", "Node", "Flutter", "React", "React Native", "Vue", "Spring Boot", "Swift");
     public final ChipMovementMethod movementMethod = ChipMovementMethod.newInstance();
     public final ChipMovementMethod removeMethod = ChipMovementMethod.newInstance();
     public final int action = R.xml.custom_standalone_chip_action;
     public final int entry = R.xml.standalone_chip_entry;
+    private final Rect chipBounds = new Rect();
 
     public MainViewModel() {
         this.chips.addAll(Arrays.asList("伦敦", "巴黎", "上海", "东京", "斯德哥尔摩", "纽约"));
         this.editChips.addAll(Arrays.asList("Android", "iOS", "Java", "Node", "Flutter", "React","Vue"));
+        //标签云只排版和绘制可见的部分，几千个chip也不影响滚动
+        for (int i = 0; i < 5000; i++) {
+            this.cloud.add("#" + i);
+        }
         movementMethod.setOnClickListener((tv, span) -> {
             Log.d("movementMethod", "" + span.getText());
             this.chips.add(span.getText());
             return true;
         });
         removeMethod.setOnClickListener((tv, span) -> {
-            ((ChipSpan) span).getLocationOnScreen(tv);
-            String text = span.getText();
-            remove(text);
+            if (((ChipSpan) span).getBoundsOnScreen(tv, chipBounds)) {
+                Log.d("removeMethod", "clicked at " + chipBounds.toShortString());
+            }
+            if (tv instanceof EditText) {
+                //直接编辑Editable，不经过列表和重新绑定
+                ChipEditor.of(tv, entry).remove(span);
+                return true;
+            }
+            //按chip在列表中的位置删除，文本重复时也不会删错
+            remove(ChipSpanBindings.positionOf(tv, span));
             return true;
         });
 
@@ -54,7 +74,13 @@ public class MainViewModel extends ViewModel {
         chips.add(s);
     }
 
-    public void remove(String text) {
-        chips.remove(text);
+    public void pick(String text) {
+        chips.add(text);
+    }
+
+    public void remove(int position) {
+        if (position >= 0 && position < chips.size()) {
+            chips.remove(position);
+        }
     }
 }
@@ -0,0 +1,66 @@
+package github.hotstu.chipspan.benchmark;
+
+import java.util.Locale;
+
+import static github.hotstu.chipspan.testing.ChipTestSupport.allocatedBytes;
+
+/**
+ * 极简的JVM微基准：预热后按批次计时，输出ns/op和bytes/op
+ */
+final class Bench {
+    private static final long WARM_UP_NANOS = 300_000_000L;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    interface Op {
+        void run(int i);
+    }
+
+    private Bench() {
+    }
+
+    static Result run(String name, Op op) {
+        long deadline = System.nanoTime() + WARM_UP_NANOS;
+        int i = 0;
+        while (System.nanoTime() < deadline) {
+            op.run(i++);
+        }
+
+        long ops = 0;
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        deadline = start + MEASURE_NANOS;
+        long now;
+        do {
+            //每批次64次，减少nanoTime本身的开销
+            for (int j = 0; j < 64; j++) {
+                op.run(i++);
+            }
+            ops += 64;
+            now = System.nanoTime();
+        } while (now < deadline);
+        Result result = new Result(name, ops, (now - start) / (double) ops,
+                (allocatedBytes() - bytes) / (double) ops);
+        System.out.println(result);
+        return result;
+    }
+
+    static final class Result {
+        final String name;
+        final long ops;
+        final double nanosPerOp;
+        final double bytesPerOp;
+
+        Result(String name, long ops, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.ops = ops;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-40s %12.1f ns/op %12.1f B/op %10d ops",
+                    name, nanosPerOp, bytesPerOp, ops);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package github.hotstu.chipspan.benchmark;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.text.Spannable;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import github.hotstu.chipspan.ChipMovementMethod;
+import github.hotstu.chipspan.ChipSpan;
+import github.hotstu.chipspan.ChipSpanBindings;
+import github.hotstu.chipspan.testing.ChipTestSupport;
+
+/**
+ * chip的构建、measure、draw和点击命中测试的基准，结果输出到标准输出
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ChipBenchmark {
+    private static final int WIDTH = 1080;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ChipTestSupport.themedContext();
+    }
+
+    @Test
+    public void bindChipText() {
+        for (int count : new int[]{10, 100, 1000}) {
+            final List<String> texts = texts(count);
+            final TextView tv = new TextView(context);
+            Bench.run("bindChipText/" + count, new Bench.Op() {
+                @Override
+                public void run(int i) {
+                    ChipSpanBindings.bindChipText(tv, texts);
+                }
+            });
+            Bench.run("bindChipText+layout/" + count, new Bench.Op() {
+                @Override
+                public void run(int i) {
+                    ChipSpanBindings.bindChipText(tv, texts);
+                    layout(tv);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void getSizeAndDraw() {
+        final ChipSpan span = new ChipSpan(context, "Android");
+        final Paint paint = new Paint();
+        final Paint.FontMetricsInt fm = new Paint.FontMetricsInt();
+        final Canvas canvas = new Canvas(Bitmap.createBitmap(400, 200, Bitmap.Config.ARGB_8888));
+        Bench.run("ChipSpan.getSize", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                span.getSize(paint, "Android ", 0, 7, fm);
+            }
+        });
+        Bench.run("ChipSpan.draw", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                span.draw(canvas, "Android ", 0, 7, 0, 0, 100, 120, paint);
+            }
+        });
+        span.setStatic(true);
+        Bench.run("ChipSpan.draw(static)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                span.draw(canvas, "Android ", 0, 7, 0, 0, 100, 120, paint);
+            }
+        });
+    }
+
+    @Test
+    public void findClickableSpanUnderTouch() {
+        for (int count : new int[]{10, 100, 500}) {
+            final TextView tv = new TextView(context);
+            ChipSpanBindings.bindChipText(tv, texts(count));
+            layout(tv);
+            final HitTester hitTester = new HitTester();
+            final Spannable text = (Spannable) tv.getText();
+            final int height = tv.getLayout().getHeight();
+            final long now = SystemClock.uptimeMillis();
+            final MotionEvent event = MotionEvent.obtain(now, now, MotionEvent.ACTION_MOVE, 0, 0, 0);
+            Bench.run("findClickableSpanUnderTouch/" + count, new Bench.Op() {
+                @Override
+                public void run(int i) {
+                    event.setLocation((i * 37) % WIDTH, (i * 53) % height);
+                    hitTester.find(tv, text, event);
+                }
+            });
+            event.recycle();
+        }
+    }
+
+    private static List<String> texts(int count) {
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            texts.add("tag" + i);
+        }
+        return texts;
+    }
+
+    private static void layout(TextView tv) {
+        tv.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        tv.layout(0, 0, tv.getMeasuredWidth(), tv.getMeasuredHeight());
+    }
+
+    private static final class HitTester extends ChipMovementMethod {
+        ChipSpan find(TextView tv, Spannable text, MotionEvent event) {
+            return findClickableSpanUnderTouch(tv, text, event);
+        }
+    }
+}
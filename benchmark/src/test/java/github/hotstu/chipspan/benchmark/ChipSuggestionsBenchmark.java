@@ -0,0 +1,64 @@
+package github.hotstu.chipspan.benchmark;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import github.hotstu.chipspan.ChipSuggestions;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 自动补全索引的建立和查询，目标是10万个候选词时单次查询在1毫秒以内
+ */
+public class ChipSuggestionsBenchmark {
+    private static final int CANDIDATES = 100_000;
+    private static final String[] PREFIXES = {"a", "an", "ann", "jo", "mar", "smi", "x", "zz"};
+
+    @Test
+    public void query100k() {
+        final List<String> candidates = candidates(CANDIDATES);
+        Bench.run("Index.build/1000", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                ChipSuggestions.Index.build(candidates.subList(0, 1000));
+            }
+        });
+        final ChipSuggestions.Index index = ChipSuggestions.Index.build(candidates);
+        final Set<String> excluded = Collections.emptySet();
+        Bench.Result result = Bench.run("Index.query/" + CANDIDATES, new Bench.Op() {
+            @Override
+            public void run(int i) {
+                index.query(PREFIXES[i % PREFIXES.length], excluded, 8);
+            }
+        });
+        assertTrue(result.toString(), result.nanosPerOp < 1_000_000);
+    }
+
+    /**
+     * "名 姓"形式的候选词，单词来自有限的音节组合，前缀会命中大量key
+     */
+    private static List<String> candidates(int count) {
+        String[] syllables = {"an", "na", "jo", "mar", "smi", "th", "el", "li", "son", "ber", "ka", "ro"};
+        Random random = new Random(42);
+        List<String> candidates = new ArrayList<>(count);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            for (int word = 0; word < 2; word++) {
+                if (word > 0) {
+                    sb.append(' ');
+                }
+                for (int s = 1 + random.nextInt(3); s > 0; s--) {
+                    sb.append(syllables[random.nextInt(syllables.length)]);
+                }
+            }
+            candidates.add(sb.toString());
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,262 @@
+package github.hotstu.chipspan;
+
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
+import androidx.customview.widget.ExploreByTouchHelper;
+
+import java.util.List;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 把TextView中的chip作为虚拟节点暴露给无障碍服务和键盘/方向键
+ * 节点的区域和文本来自{@link ChipLayoutIndex}，只在文本或layout变化后重建；
+ * 方向键在chip之间移动焦点直接查索引，不经过ExploreByTouchHelper对全部节点的焦点搜索
+ * 只设置AccessibilityDelegate，不占用TextView的各种listener；触摸浏览和方向键需要宿主View在
+ * dispatchHoverEvent、dispatchKeyEvent和onFocusChanged中转发给这里的同名静态方法，见{@link ChipTextView}
+ * @since 10/17/26
+ */
+public class ChipAccessibilityHelper extends ExploreByTouchHelper implements TextWatcher,
+        View.OnLayoutChangeListener {
+    private final TextView mTextView;
+    private final Rect mBounds = new Rect();
+    private final Rect mVisible = new Rect();
+    private int mLastFocused = INVALID_ID;
+    private ChipSpan mFocusedChip;
+
+    private ChipAccessibilityHelper(TextView textView) {
+        super(textView);
+        this.mTextView = textView;
+    }
+
+    public static void attach(@NonNull TextView textView) {
+        if (textView.getTag(R.id.tag_chip_accessibility) instanceof ChipAccessibilityHelper) {
+            return;
+        }
+        ChipAccessibilityHelper helper = new ChipAccessibilityHelper(textView);
+        textView.setTag(R.id.tag_chip_accessibility, helper);
+        ViewCompat.setAccessibilityDelegate(textView, helper);
+        textView.addTextChangedListener(helper);
+        textView.addOnLayoutChangeListener(helper);
+        textView.setFocusable(true);
+    }
+
+    public static void detach(@NonNull TextView textView) {
+        Object tag = textView.getTag(R.id.tag_chip_accessibility);
+        if (tag instanceof ChipAccessibilityHelper) {
+            ChipAccessibilityHelper helper = (ChipAccessibilityHelper) tag;
+            helper.clearKeyboardFocusForVirtualView(helper.getKeyboardFocusedVirtualViewId());
+            ViewCompat.setAccessibilityDelegate(textView, null);
+            textView.removeTextChangedListener(helper);
+            textView.removeOnLayoutChangeListener(helper);
+            textView.setTag(R.id.tag_chip_accessibility, null);
+        }
+    }
+
+    /**
+     * 宿主在View#dispatchHoverEvent中调用，返回true时不需要再交给super
+     */
+    public static boolean dispatchHoverEvent(@NonNull TextView textView, @NonNull MotionEvent event) {
+        ChipAccessibilityHelper helper = helperOf(textView);
+        return helper != null && helper.dispatchHoverEvent(event);
+    }
+
+    /**
+     * 宿主在View#dispatchKeyEvent中调用，返回true时不需要再交给super
+     */
+    public static boolean dispatchKeyEvent(@NonNull TextView textView, @NonNull KeyEvent event) {
+        ChipAccessibilityHelper helper = helperOf(textView);
+        return helper != null && helper.onKey(event);
+    }
+
+    /**
+     * 宿主在View#onFocusChanged中调用
+     */
+    public static void onFocusChanged(@NonNull TextView textView, boolean gainFocus) {
+        ChipAccessibilityHelper helper = helperOf(textView);
+        if (helper != null) {
+            helper.onFocusChange(gainFocus);
+        }
+    }
+
+    private static ChipAccessibilityHelper helperOf(TextView textView) {
+        Object tag = textView.getTag(R.id.tag_chip_accessibility);
+        return tag instanceof ChipAccessibilityHelper ? (ChipAccessibilityHelper) tag : null;
+    }
+
+    private ChipLayoutIndex index() {
+        return ChipLayoutIndex.of(mTextView);
+    }
+
+    @Override
+    protected int getVirtualViewAt(float x, float y) {
+        int layoutX = (int) x - mTextView.getTotalPaddingLeft() + mTextView.getScrollX();
+        int layoutY = (int) y - mTextView.getTotalPaddingTop() + mTextView.getScrollY();
+        int i = index().findIndexAt(layoutX, layoutY);
+        return i >= 0 ? i : INVALID_ID;
+    }
+
+    @Override
+    protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+        //可见区域(包括被父布局裁剪的部分)和文本区域的交集，换算到layout坐标
+        if (!mTextView.getLocalVisibleRect(mVisible)) {
+            return;
+        }
+        int left = mTextView.getScrollX() + mTextView.getTotalPaddingLeft();
+        int top = mTextView.getScrollY() + mTextView.getTotalPaddingTop();
+        if (!mVisible.intersect(left, top,
+                mTextView.getScrollX() + mTextView.getWidth() - mTextView.getTotalPaddingRight(),
+                mTextView.getScrollY() + mTextView.getHeight() - mTextView.getTotalPaddingBottom())) {
+            return;
+        }
+        mVisible.offset(-mTextView.getTotalPaddingLeft(), -mTextView.getTotalPaddingTop());
+        ChipLayoutIndex index = index();
+        for (int i = 0, n = index.size(); i < n; i++) {
+            index.getChipBounds(i, mBounds);
+            if (Rect.intersects(mVisible, mBounds)) {
+                virtualViewIds.add(i);
+            }
+        }
+    }
+
+    @Override
+    protected void onPopulateNodeForVirtualView(int virtualViewId, @NonNull AccessibilityNodeInfoCompat node) {
+        ChipLayoutIndex index = index();
+        if (virtualViewId < 0 || virtualViewId >= index.size()) {
+            //节点已经过期，等待invalidateRoot之后的重新查询
+            node.setText("");
+            mBounds.setEmpty();
+            node.setBoundsInParent(mBounds);
+            return;
+        }
+        ChipSpan chip = index.getChip(virtualViewId);
+        //ExploreByTouchHelper换算屏幕坐标时会自己减去滚动，这里只计入padding
+        index.getChipBoundsInView(mTextView, chip, mBounds);
+        node.setBoundsInParent(mBounds);
+        node.setText(chip.getText());
+        node.setClassName("android.widget.Button");
+        node.setEnabled(chip.isEnabled());
+        node.setFocusable(true);
+        node.setClickable(true);
+        node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+        node.setLongClickable(true);
+        node.addAction(AccessibilityNodeInfoCompat.ACTION_LONG_CLICK);
+    }
+
+    @Override
+    protected boolean onPerformActionForVirtualView(int virtualViewId, int action, Bundle arguments) {
+        ChipLayoutIndex index = index();
+        if (virtualViewId < 0 || virtualViewId >= index.size() || !(mTextView.getMovementMethod() instanceof ChipMovementMethod)) {
+            return false;
+        }
+        ChipMovementMethod method = (ChipMovementMethod) mTextView.getMovementMethod();
+        ChipSpan chip = index.getChip(virtualViewId);
+        switch (action) {
+            case AccessibilityNodeInfoCompat.ACTION_CLICK:
+                sendEventForVirtualView(virtualViewId, AccessibilityEvent.TYPE_VIEW_CLICKED);
+                return method.dispatchUrlClick(mTextView, chip);
+            case AccessibilityNodeInfoCompat.ACTION_LONG_CLICK:
+                sendEventForVirtualView(virtualViewId, AccessibilityEvent.TYPE_VIEW_LONG_CLICKED);
+                return method.dispatchUrlLongClick(mTextView, chip);
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void onVirtualViewKeyboardFocusChanged(int virtualViewId, boolean hasFocus) {
+        //键盘焦点用按下的样式表示；失去焦点时序号可能已经随文本变化，按span对象恢复
+        ChipLayoutIndex index = index();
+        if (hasFocus && virtualViewId >= 0 && virtualViewId < index.size()) {
+            mFocusedChip = index.getChip(virtualViewId);
+            mFocusedChip.setPressed(true);
+            mLastFocused = virtualViewId;
+            index.invalidateChip(mTextView, mFocusedChip, mBounds);
+        } else if (!hasFocus && mFocusedChip != null) {
+            ChipSpan chip = mFocusedChip;
+            mFocusedChip = null;
+            chip.setPressed(false);
+            index.invalidateChip(mTextView, chip, mBounds);
+        }
+    }
+
+    private boolean onKey(KeyEvent event) {
+        int direction = directionOf(event.getKeyCode(), event);
+        if (direction == 0) {
+            //确认键等由ExploreByTouchHelper转为对焦点chip的点击
+            return dispatchKeyEvent(event);
+        }
+        if (event.getAction() != KeyEvent.ACTION_DOWN) {
+            return false;
+        }
+        ChipLayoutIndex index = index();
+        int focused = getKeyboardFocusedVirtualViewId();
+        int next = focused == INVALID_ID || focused >= index.size()
+                ? (index.size() > 0 ? 0 : -1) : index.findNeighbor(focused, direction);
+        //没有相邻的chip时交给系统，把焦点移出TextView
+        return next >= 0 && requestKeyboardFocusForVirtualView(next);
+    }
+
+    private static int directionOf(int keyCode, KeyEvent event) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                return View.FOCUS_LEFT;
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                return View.FOCUS_RIGHT;
+            case KeyEvent.KEYCODE_DPAD_UP:
+                return View.FOCUS_UP;
+            case KeyEvent.KEYCODE_DPAD_DOWN:
+                return View.FOCUS_DOWN;
+            case KeyEvent.KEYCODE_TAB:
+                return event.isShiftPressed() ? View.FOCUS_BACKWARD : View.FOCUS_FORWARD;
+            default:
+                return 0;
+        }
+    }
+
+    private void onFocusChange(boolean hasFocus) {
+        //不调用ExploreByTouchHelper#onFocusChanged，它会为全部节点做一次焦点搜索
+        if (hasFocus) {
+            int n = index().size();
+            if (n > 0) {
+                requestKeyboardFocusForVirtualView(mLastFocused >= 0 && mLastFocused < n ? mLastFocused : 0);
+            }
+        } else {
+            clearKeyboardFocusForVirtualView(getKeyboardFocusedVirtualViewId());
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        //序号随文本变化，焦点和节点全部作废
+        clearKeyboardFocusForVirtualView(getKeyboardFocusedVirtualViewId());
+        mLastFocused = INVALID_ID;
+        invalidateRoot();
+    }
+
+    @Override
+    public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                               int oldLeft, int oldTop, int oldRight, int oldBottom) {
+        if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+            invalidateRoot();
+        }
+    }
+}
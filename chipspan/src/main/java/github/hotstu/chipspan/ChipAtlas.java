@@ -0,0 +1,325 @@
+package github.hotstu.chipspan;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.WeakHashMap;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 静态chip的纹理图集：每种外观(drawable + state)只光栅化一次，draw时只需要一次drawBitmap
+ * 按shelf方式装箱：页面从{@link #INITIAL_PAGE_SIZE}开始按需加倍到{@link #PAGE_SIZE}；
+ * drawable被回收(缓存淘汰且没有span再引用)后归还它的区域，shelf上的区域全部归还后整条shelf重新使用；
+ * 内存紧张时整页释放，之后按需重新光栅化
+ * @since 10/17/26
+ */
+public class ChipAtlas implements ComponentCallbacks2 {
+    public static final int INITIAL_PAGE_SIZE = 256;
+    /**
+     * 页面的最大边长
+     */
+    public static final int PAGE_SIZE = 1024;
+    public static final int MAX_PAGES = 4;
+    /**
+     * 每个region之间留1px，避免过滤时串色
+     */
+    private static final int GUTTER = 1;
+    private static volatile ChipAtlas sInstance;
+
+    private final ArrayList<Page> mPages = new ArrayList<>();
+    /**
+     * drawable被ChipDrawableCache淘汰且没有span引用后，对应的条目随之消失
+     */
+    private final WeakHashMap<Drawable, Region[]> mRegions = new WeakHashMap<>();
+    /**
+     * drawable被回收后从队列中得到通知，归还它的区域
+     */
+    private final ReferenceQueue<Drawable> mCollected = new ReferenceQueue<>();
+    private final HashSet<Owner> mOwners = new HashSet<>();
+
+    public static ChipAtlas get(@NonNull Context context) {
+        if (sInstance == null) {
+            synchronized (ChipAtlas.class) {
+                if (sInstance == null) {
+                    sInstance = new ChipAtlas();
+                    context.getApplicationContext().registerComponentCallbacks(sInstance);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private ChipAtlas() {
+    }
+
+    /**
+     * 返回drawable在指定state下的图集区域，第一次请求时才光栅化
+     *
+     * @param variant 同一个drawable的第几种state，目前ChipSpan使用0(normal)和1(pressed)
+     * @return 放不下时返回null，调用方应退回直接绘制drawable
+     */
+    @Nullable
+    public Region obtain(@NonNull Drawable drawable, int variant, int[] state) {
+        reclaim();
+        Region[] variants = mRegions.get(drawable);
+        if (variants == null) {
+            variants = new Region[2];
+            mRegions.put(drawable, variants);
+            mOwners.add(new Owner(drawable, variants, mCollected));
+        }
+        Region region = variants[variant];
+        if (region != null && region.isValid()) {
+            return region;
+        }
+        Rect bounds = drawable.getBounds();
+        region = allocate(bounds.width(), bounds.height());
+        if (region == null) {
+            return null;
+        }
+        Canvas canvas = region.page.canvas;
+        canvas.save();
+        canvas.clipRect(region.bounds);
+        canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+        canvas.translate(region.bounds.left - bounds.left, region.bounds.top - bounds.top);
+        int[] oldState = drawable.getState();
+        drawable.setState(state);
+        drawable.draw(canvas);
+        drawable.setState(oldState);
+        canvas.restore();
+        variants[variant] = region;
+        return region;
+    }
+
+    /**
+     * 把region绘制到dst
+     *
+     * @return region已经失效时返回false
+     */
+    public boolean draw(@NonNull Canvas canvas, @NonNull Region region, @NonNull Rect dst) {
+        if (!region.isValid()) {
+            return false;
+        }
+        canvas.drawBitmap(region.page.bitmap, region.bounds, dst, null);
+        return true;
+    }
+
+    /**
+     * 归还已经被回收的drawable占用的区域
+     */
+    private void reclaim() {
+        Reference<? extends Drawable> ref;
+        while ((ref = mCollected.poll()) != null) {
+            Owner owner = (Owner) ref;
+            mOwners.remove(owner);
+            for (Region region : owner.variants) {
+                if (region != null) {
+                    region.free();
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private Region allocate(int width, int height) {
+        if (width <= 0 || height <= 0 || width > PAGE_SIZE || height > PAGE_SIZE) {
+            return null;
+        }
+        for (Page page : mPages) {
+            Region region = page.allocate(width, height);
+            if (region != null) {
+                return region;
+            }
+        }
+        //先把已有的页面加大，最后才新建页面
+        for (Page page : mPages) {
+            Region region = allocateGrowing(page, width, height);
+            if (region != null) {
+                return region;
+            }
+        }
+        if (mPages.size() >= MAX_PAGES) {
+            return null;
+        }
+        Page page = new Page(INITIAL_PAGE_SIZE);
+        mPages.add(page);
+        return allocateGrowing(page, width, height);
+    }
+
+    @Nullable
+    private static Region allocateGrowing(Page page, int width, int height) {
+        Region region = page.allocate(width, height);
+        while (region == null && page.grow()) {
+            region = page.allocate(width, height);
+        }
+        return region;
+    }
+
+    public int pageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * 释放全部页面，已经拿到的region会失效并在下次draw时重新光栅化
+     */
+    public void clear() {
+        for (Page page : mPages) {
+            page.release();
+        }
+        mPages.clear();
+        mRegions.clear();
+        mOwners.clear();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW
+                || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    public static final class Region {
+        final Page page;
+        final Shelf shelf;
+        final Rect bounds;
+        private boolean freed;
+
+        Region(Page page, Shelf shelf, Rect bounds) {
+            this.page = page;
+            this.shelf = shelf;
+            this.bounds = bounds;
+        }
+
+        public boolean isValid() {
+            return !freed && page.bitmap != null;
+        }
+
+        void free() {
+            if (!freed) {
+                freed = true;
+                shelf.release();
+            }
+        }
+    }
+
+    static final class Shelf {
+        final int top;
+        final int height;
+        int x;
+        /**
+         * 尚未归还的区域数
+         */
+        int live;
+
+        Shelf(int top, int height) {
+            this.top = top;
+            this.height = height;
+        }
+
+        void release() {
+            if (--live == 0) {
+                //整条shelf空了，从头重新分配
+                x = 0;
+            }
+        }
+    }
+
+    static final class Page {
+        Bitmap bitmap;
+        Canvas canvas;
+        int size;
+        private final ArrayList<Shelf> shelves = new ArrayList<>();
+        private int nextTop;
+
+        Page(int size) {
+            this.size = size;
+            bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+        }
+
+        @Nullable
+        Region allocate(int width, int height) {
+            if (bitmap == null || width > size) {
+                return null;
+            }
+            //放进能容纳的最矮的shelf，没有时另起一条
+            Shelf target = null;
+            for (Shelf shelf : shelves) {
+                if (height <= shelf.height && shelf.x + width <= size
+                        && (target == null || shelf.height < target.height)) {
+                    target = shelf;
+                }
+            }
+            if (target == null) {
+                if (nextTop + height > size) {
+                    return null;
+                }
+                target = new Shelf(nextTop, height);
+                shelves.add(target);
+                nextTop += height + GUTTER;
+            }
+            Rect bounds = new Rect(target.x, target.top, target.x + width, target.top + height);
+            target.x += width + GUTTER;
+            target.live++;
+            return new Region(this, target, bounds);
+        }
+
+        /**
+         * 边长加倍并复制已有内容，region的坐标不变
+         *
+         * @return 已经是最大尺寸时返回false
+         */
+        boolean grow() {
+            if (bitmap == null || size >= PAGE_SIZE) {
+                return false;
+            }
+            int newSize = Math.min(size * 2, PAGE_SIZE);
+            Bitmap grown = Bitmap.createBitmap(newSize, newSize, Bitmap.Config.ARGB_8888);
+            Canvas grownCanvas = new Canvas(grown);
+            grownCanvas.drawBitmap(bitmap, 0, 0, null);
+            //旧的bitmap同样不主动recycle
+            bitmap = grown;
+            canvas = grownCanvas;
+            size = newSize;
+            return true;
+        }
+
+        void release() {
+            //不主动recycle，已经录制进display list的帧可能还在使用这张bitmap
+            bitmap = null;
+            canvas = null;
+        }
+    }
+
+    private static final class Owner extends WeakReference<Drawable> {
+        final Region[] variants;
+
+        Owner(Drawable drawable, Region[] variants, ReferenceQueue<Drawable> queue) {
+            super(drawable, queue);
+            this.variants = variants;
+        }
+    }
+}
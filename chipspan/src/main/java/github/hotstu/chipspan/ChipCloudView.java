@@ -0,0 +1,566 @@
+package github.hotstu.chipspan;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.HapticFeedbackConstants;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+import android.widget.OverScroller;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.XmlRes;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 大量chip的标签云：自己做流式布局，不经过TextView
+ * 行是按需增量排版的，只排到当前可见区域的底部；只有可见的chip持有ChipSpan，排版时测量用的span和滚出可见区域的span
+ * 释放drawable后放回{@link ChipSpanPool}，与RecyclerView回收view一样，常驻的span和drawable数量只和可见的chip数量有关
+ * @since 10/17/26
+ */
+public class ChipCloudView extends View {
+    private static final int[] EMPTY_INT = new int[0];
+
+    public interface OnChipClickListener {
+        void onChipClick(ChipCloudView view, IChip chip, int position);
+    }
+
+    public interface OnChipLongClickListener {
+        void onChipLongClick(ChipCloudView view, IChip chip, int position);
+    }
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+    private final OverScroller mScroller;
+    private final GestureDetector mGestureDetector;
+    private List<String> mTexts = Collections.emptyList();
+    private int mRes = R.xml.standalone_chip_action;
+    private OnChipClickListener mOnChipClickListener;
+    private OnChipLongClickListener mOnChipLongClickListener;
+
+    private final ChipSpanPool mPool = new ChipSpanPool();
+    //排版结果：mSpans和mLefts按chip下标(只有可见的chip有span)，mRowStarts/mRowTops/mRowHeights按行
+    private ChipSpan[] mSpans = new ChipSpan[0];
+    private int[] mLefts = EMPTY_INT;
+    private int[] mRowStarts = EMPTY_INT;
+    private int[] mRowTops = EMPTY_INT;
+    private int[] mRowHeights = EMPTY_INT;
+    private int mRowCount;
+    /**
+     * 已经排版的chip数量，[0, mLaidOut)的chip都已经有了位置
+     */
+    private int mLaidOut;
+    private int mContentBottom;
+    private int mLayoutWidth = -1;
+
+    //上一帧画过的chip区间[mFirstVisible, mLastVisible)，持有drawable
+    private int mFirstVisible;
+    private int mLastVisible;
+    private int mPressed = -1;
+
+    public ChipCloudView(Context context) {
+        this(context, null);
+    }
+
+    public ChipCloudView(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public ChipCloudView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        mScroller = new OverScroller(context);
+        mGestureDetector = new GestureDetector(context, new GestureListener());
+        mGestureDetector.setIsLongpressEnabled(false);
+        setWillNotDraw(false);
+        setVerticalScrollBarEnabled(true);
+    }
+
+    public void setChips(@Nullable List<String> texts) {
+        setChips(texts, mRes);
+    }
+
+    /**
+     * @param texts 列表会被引用而不是拷贝，修改之后需要重新调用
+     */
+    public void setChips(@Nullable List<String> texts, @XmlRes int res) {
+        releaseVisible();
+        mTexts = texts != null ? texts : Collections.<String>emptyList();
+        mRes = res;
+        int n = mTexts.size();
+        mSpans = new ChipSpan[n];
+        mLefts = n > mLefts.length ? new int[n] : mLefts;
+        mPressed = -1;
+        mScroller.forceFinished(true);
+        resetLayout();
+        scrollTo(0, 0);
+        requestLayout();
+        invalidate();
+    }
+
+    public int getChipCount() {
+        return mTexts.size();
+    }
+
+    /**
+     * @return 第position个chip；不可见的chip没有常驻的span，返回的是临时对象，对它的修改不会保留
+     */
+    @NonNull
+    public IChip getChip(int position) {
+        ChipSpan span = mSpans[position];
+        return span != null ? span : new ChipSpan(getContext(), mTexts.get(position), mRes);
+    }
+
+    public void setOnChipClickListener(OnChipClickListener listener) {
+        this.mOnChipClickListener = listener;
+    }
+
+    public void setOnChipLongClickListener(OnChipLongClickListener listener) {
+        this.mOnChipLongClickListener = listener;
+        mGestureDetector.setIsLongpressEnabled(listener != null);
+    }
+
+    /**
+     * 滚动到让第position个chip所在的行位于顶部
+     */
+    public void scrollToChip(int position) {
+        if (position < 0 || position >= mTexts.size()) {
+            return;
+        }
+        layoutThrough(position);
+        mScroller.forceFinished(true);
+        scrollTo(0, clampScroll(mRowTops[rowOf(position)]));
+    }
+
+    private ChipSpan span(int position) {
+        ChipSpan span = mSpans[position];
+        if (span == null) {
+            span = mPool.acquire(getContext(), mTexts.get(position), mRes);
+            mSpans[position] = span;
+        }
+        return span;
+    }
+
+    /**
+     * 第position个chip的span释放drawable后放回池中，按下的chip除外
+     */
+    private void recycle(int position) {
+        ChipSpan span = mSpans[position];
+        if (span != null && position != mPressed) {
+            span.releaseDrawable();
+            mPool.release(span);
+            mSpans[position] = null;
+        }
+    }
+
+    private void resetLayout() {
+        mRowCount = 0;
+        mLaidOut = 0;
+        mContentBottom = 0;
+        mFirstVisible = mLastVisible = 0;
+    }
+
+    private int availableWidth() {
+        return Math.max(0, mLayoutWidth - getPaddingLeft() - getPaddingRight());
+    }
+
+    /**
+     * 排版下一行，没有剩余chip时返回false
+     */
+    private boolean layoutNextRow() {
+        int n = mTexts.size();
+        if (mLaidOut >= n || mLayoutWidth < 0) {
+            return false;
+        }
+        if (mRowCount == mRowStarts.length) {
+            int size = Math.max(16, mRowCount * 2);
+            mRowStarts = copyOf(mRowStarts, size);
+            mRowTops = copyOf(mRowTops, size);
+            mRowHeights = copyOf(mRowHeights, size);
+        }
+        int available = availableWidth();
+        int x = 0;
+        int height = 0;
+        int i = mLaidOut;
+        //一行至少放一个chip，放不下的chip会超出右边界
+        while (i < n) {
+            int width = span(i).getSize(mPaint, null, 0, 0, mFontMetrics);
+            if (i < mFirstVisible || i >= mLastVisible) {
+                //只是为了测量，刚放回池中的span下次acquire同样的文本时直接取回，尺寸仍然有效
+                recycle(i);
+            }
+            if (x > 0 && x + width > available) {
+                break;
+            }
+            mLefts[i] = x;
+            x += width;
+            height = Math.max(height, mFontMetrics.descent - mFontMetrics.ascent);
+            i++;
+        }
+        mRowStarts[mRowCount] = mLaidOut;
+        mRowTops[mRowCount] = mContentBottom;
+        mRowHeights[mRowCount] = height;
+        mRowCount++;
+        mLaidOut = i;
+        mContentBottom += height;
+        return true;
+    }
+
+    /**
+     * 保证内容至少排版到bottom(内容坐标)
+     */
+    private void layoutUntil(int bottom) {
+        while (mContentBottom < bottom && layoutNextRow()) {
+            //继续
+        }
+    }
+
+    private void layoutThrough(int position) {
+        while (mLaidOut <= position && layoutNextRow()) {
+            //继续
+        }
+    }
+
+    private static int[] copyOf(int[] src, int size) {
+        int[] dst = new int[size];
+        System.arraycopy(src, 0, dst, 0, Math.min(src.length, size));
+        return dst;
+    }
+
+    /**
+     * @return 包含第position个(已排版的)chip的行
+     */
+    private int rowOf(int position) {
+        int lo = 0;
+        int hi = mRowCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mRowStarts[mid] <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return 第一个底部在y(内容坐标)之下的行，需要的行已经排版
+     */
+    private int rowAt(int y) {
+        int lo = 0;
+        int hi = mRowCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mRowTops[mid] + mRowHeights[mid] <= y) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return 顶部那一行的第一个chip，没有chip时返回-1
+     */
+    public int getFirstVisiblePosition() {
+        layoutUntil(getScrollY() + 1);
+        int row = rowAt(getScrollY());
+        return row < mRowCount ? mRowStarts[row] : -1;
+    }
+
+    /**
+     * @return 底部那一行的最后一个chip，没有chip时返回-1
+     */
+    public int getLastVisiblePosition() {
+        int bottom = getScrollY() + getHeight() - getPaddingTop() - getPaddingBottom();
+        layoutUntil(bottom);
+        int row = Math.min(rowAt(bottom - 1), mRowCount - 1);
+        return row >= 0 ? rowEnd(row) - 1 : -1;
+    }
+
+    int laidOutCount() {
+        return mLaidOut;
+    }
+
+    int spanCount() {
+        int count = 0;
+        for (ChipSpan span : mSpans) {
+            if (span != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 第position个chip所在行的顶部(内容坐标)
+     */
+    int chipTop(int position) {
+        layoutThrough(position);
+        return mRowTops[rowOf(position)];
+    }
+
+    private int rowEnd(int row) {
+        return row + 1 < mRowCount ? mRowStarts[row + 1] : mLaidOut;
+    }
+
+    /**
+     * @return 位于(x, y)(View坐标)的chip，不存在时返回-1
+     */
+    private int chipAt(float x, float y) {
+        int contentY = (int) y + getScrollY() - getPaddingTop();
+        int contentX = (int) x - getPaddingLeft();
+        layoutUntil(contentY + 1);
+        int row = rowAt(contentY);
+        if (row >= mRowCount || contentY < mRowTops[row]) {
+            return -1;
+        }
+        for (int i = mRowStarts[row], end = rowEnd(row); i < end; i++) {
+            ChipSpan span = span(i);
+            if (contentX >= mLefts[i] && contentX < mLefts[i] + span.getSize(mPaint, null, 0, 0, null)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 全部排版之前按已排版部分的平均值估算内容高度，用于滚动范围和滚动条
+     */
+    private int estimatedContentHeight() {
+        int n = mTexts.size();
+        if (mLaidOut >= n || mLaidOut == 0) {
+            return mContentBottom;
+        }
+        return (int) ((long) mContentBottom * n / mLaidOut);
+    }
+
+    private int maxScroll() {
+        int viewport = getHeight() - getPaddingTop() - getPaddingBottom();
+        return Math.max(0, estimatedContentHeight() - viewport);
+    }
+
+    private int clampScroll(int y) {
+        int viewport = getHeight() - getPaddingTop() - getPaddingBottom();
+        //估算值可能偏大，滚到估算范围的底部时把真实内容排版出来再限制
+        layoutUntil(y + viewport);
+        return Math.max(0, Math.min(y, maxScroll()));
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        if (width != mLayoutWidth) {
+            relayout(width);
+        }
+        int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        int height;
+        if (heightMode == MeasureSpec.EXACTLY) {
+            height = heightSize;
+        } else {
+            //wrap_content时只排到父布局允许的高度为止；UNSPECIFIED(比如放在ScrollView里)时最多排一屏，
+            //其余的chip在自身内部滚动，而不是为了测量把所有chip都排版出来
+            int limit = heightMode == MeasureSpec.AT_MOST
+                    ? heightSize : getResources().getDisplayMetrics().heightPixels;
+            int padding = getPaddingTop() + getPaddingBottom();
+            layoutUntil(limit - padding);
+            height = Math.min(mContentBottom + padding, limit);
+        }
+        setMeasuredDimension(width, Math.max(height, getSuggestedMinimumHeight()));
+    }
+
+    /**
+     * 宽度变化后重新排版，保持原来位于顶部的chip仍然在顶部
+     */
+    private void relayout(int width) {
+        //滚动位置可能在已排版的最后一行之下
+        int anchor = mRowCount > 0 ? mRowStarts[Math.min(rowAt(getScrollY()), mRowCount - 1)] : 0;
+        releaseVisible();
+        mLayoutWidth = width;
+        resetLayout();
+        if (anchor > 0 && anchor < mTexts.size()) {
+            layoutThrough(anchor);
+            scrollTo(0, mRowTops[rowOf(anchor)]);
+        } else {
+            scrollTo(0, 0);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int top = getScrollY();
+        int viewport = getHeight() - getPaddingTop() - getPaddingBottom();
+        layoutUntil(top + viewport);
+        int firstRow = rowAt(top);
+        int lastRow = rowAt(top + viewport - 1);
+        int first = firstRow < mRowCount ? mRowStarts[firstRow] : mLaidOut;
+        int last = lastRow < mRowCount ? rowEnd(lastRow) : mLaidOut;
+        releaseOutside(first, last);
+
+        canvas.save();
+        canvas.clipRect(getPaddingLeft(), top + getPaddingTop(),
+                getWidth() - getPaddingRight(), top + getHeight() - getPaddingBottom());
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        for (int row = firstRow; row <= lastRow && row < mRowCount; row++) {
+            int rowTop = mRowTops[row];
+            int rowBottom = rowTop + mRowHeights[row];
+            for (int i = mRowStarts[row], end = rowEnd(row); i < end; i++) {
+                ChipSpan span = span(i);
+                span.draw(canvas, span.getText(), 0, 0, mLefts[i], rowTop, rowBottom, rowBottom, mPaint);
+            }
+        }
+        canvas.restore();
+    }
+
+    /**
+     * 回收上一帧可见、这一帧不可见的chip，开销只和变化的chip数量有关
+     */
+    private void releaseOutside(int first, int last) {
+        for (int i = mFirstVisible; i < mLastVisible; i++) {
+            if (i < first || i >= last) {
+                recycle(i);
+            }
+        }
+        mFirstVisible = first;
+        mLastVisible = last;
+    }
+
+    private void releaseVisible() {
+        for (int i = mFirstVisible; i < mLastVisible && i < mSpans.length; i++) {
+            recycle(i);
+        }
+        mFirstVisible = mLastVisible = 0;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mScroller.forceFinished(true);
+        releaseVisible();
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mScroller.computeScrollOffset()) {
+            int y = clampScroll(mScroller.getCurrY());
+            if (y != getScrollY()) {
+                scrollTo(0, y);
+            }
+            if (y != mScroller.getCurrY()) {
+                //到达真实的底部
+                mScroller.forceFinished(true);
+            }
+            awakenScrollBars();
+            postInvalidateOnAnimation();
+        }
+    }
+
+    @Override
+    protected int computeVerticalScrollRange() {
+        return Math.max(estimatedContentHeight(), getHeight() - getPaddingTop() - getPaddingBottom());
+    }
+
+    @Override
+    protected int computeVerticalScrollOffset() {
+        return getScrollY();
+    }
+
+    @Override
+    protected int computeVerticalScrollExtent() {
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = mGestureDetector.onTouchEvent(event);
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            setChipPressed(-1);
+        }
+        return handled || super.onTouchEvent(event);
+    }
+
+    private void setChipPressed(int position) {
+        if (position == mPressed) {
+            return;
+        }
+        int previous = mPressed;
+        mPressed = position;
+        if (previous >= 0 && previous < mSpans.length && mSpans[previous] != null) {
+            mSpans[previous].setPressed(false);
+            if (previous < mFirstVisible || previous >= mLastVisible) {
+                recycle(previous);
+            }
+        }
+        if (position >= 0) {
+            span(position).setPressed(true);
+        }
+        invalidate();
+    }
+
+    private class GestureListener extends GestureDetector.SimpleOnGestureListener {
+        @Override
+        public boolean onDown(MotionEvent e) {
+            if (!mScroller.isFinished()) {
+                mScroller.forceFinished(true);
+                return true;
+            }
+            int position = chipAt(e.getX(), e.getY());
+            if (position >= 0 && span(position).isEnabled()) {
+                setChipPressed(position);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapUp(MotionEvent e) {
+            int position = mPressed;
+            setChipPressed(-1);
+            if (position >= 0 && mOnChipClickListener != null) {
+                playSoundEffect(SoundEffectConstants.CLICK);
+                mOnChipClickListener.onChipClick(ChipCloudView.this, span(position), position);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onLongPress(MotionEvent e) {
+            int position = mPressed;
+            setChipPressed(-1);
+            if (position >= 0 && mOnChipLongClickListener != null) {
+                performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+                mOnChipLongClickListener.onChipLongClick(ChipCloudView.this, span(position), position);
+            }
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+            setChipPressed(-1);
+            getParent().requestDisallowInterceptTouchEvent(true);
+            int y = clampScroll(getScrollY() + (int) distanceY);
+            if (y != getScrollY()) {
+                scrollTo(0, y);
+                awakenScrollBars();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+            setChipPressed(-1);
+            mScroller.fling(0, getScrollY(), 0, (int) -velocityY, 0, 0, 0, Integer.MAX_VALUE);
+            postInvalidateOnAnimation();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package github.hotstu.chipspan;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Rect;
+import android.util.LruCache;
+import android.view.ContextThemeWrapper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.XmlRes;
+
+import com.google.android.material.chip.ChipDrawable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 进程级的ChipDrawable缓存，按(text, resId, configuration, theme)复用已经inflate并measure过的drawable，
+ * 同样的key也缓存chip的尺寸，measure阶段不需要任何drawable
+ * theme按应用过的样式比较(API 24起Theme#equals的语义)，同一样式的不同Activity实例(例如旋转前后)共享缓存
+ * 缓存的drawable在多个ChipSpan之间共享，span在draw之前负责设置自己的state，不要修改drawable的bounds
+ * 强引用的LRU只保留最近用过的少量drawable，被淘汰的改为软引用：显示中的chip自己持有drawable，
+ * 常驻内存跟随可见的chip，滚回来时只要还没被回收仍然可以命中
+ * @since 10/17/26
+ */
+public class ChipDrawableCache implements ComponentCallbacks2 {
+    public static final int DEFAULT_MAX_SIZE = 64;
+    public static final int DEFAULT_MAX_MEASURED_SIZE = 4096;
+    private static final int MAX_THEMES = 16;
+    private static volatile ChipDrawableCache sInstance;
+    private static final Executor PREWARM_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "chipspan-prewarm");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Context mAppContext;
+    private final LruCache<Key, ChipDrawable> mCache;
+    /**
+     * 被LRU淘汰的drawable，只软引用
+     */
+    private final HashMap<Key, ReleasedRef> mReleased = new HashMap<>();
+    private final ReferenceQueue<ChipDrawable> mCollected = new ReferenceQueue<>();
+    /**
+     * 每种样式一个不带文本的模板，只用来测量尺寸
+     */
+    private final LruCache<Key, ChipDrawable> mTemplates = new LruCache<>(16);
+    /**
+     * chip尺寸的缓存，宽高打包在一个long里，条目很小，可以比drawable缓存大得多；
+     * 重新绑定时相同的chip不需要再测量文本
+     */
+    private final LruCache<Key, Long> mSizes = new LruCache<>(DEFAULT_MAX_MEASURED_SIZE);
+    /**
+     * 调用方的主题到共享主题的映射，不阻止Activity的主题被回收
+     */
+    private final WeakHashMap<Resources.Theme, Context> mThemedContexts = new WeakHashMap<>();
+    /**
+     * 共享主题：建立在Application上的主题拷贝，不引用Activity；同时作为key中的theme，按实例比较
+     */
+    private final LruCache<Resources.Theme, Context> mSharedThemes = new LruCache<>(MAX_THEMES);
+
+    public static ChipDrawableCache get(@NonNull Context context) {
+        if (sInstance == null) {
+            synchronized (ChipDrawableCache.class) {
+                if (sInstance == null) {
+                    sInstance = new ChipDrawableCache(context.getApplicationContext(), DEFAULT_MAX_SIZE);
+                    sInstance.mAppContext.registerComponentCallbacks(sInstance);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private ChipDrawableCache(Context appContext, int maxSize) {
+        this.mAppContext = appContext;
+        this.mCache = new LruCache<Key, ChipDrawable>(maxSize) {
+            @Override
+            protected void entryRemoved(boolean evicted, Key key, ChipDrawable oldValue, ChipDrawable newValue) {
+                if (evicted) {
+                    release(key, oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * 返回一个设置好text和bounds的ChipDrawable，命中缓存时不会重新inflate
+     */
+    public ChipDrawable obtain(@NonNull Context context, String text, @XmlRes int resId) {
+        Context themed = themedContext(context);
+        Key key = new Key(context, themed, text, resId);
+        ChipDrawable chip = mCache.get(key);
+        if (chip == null) {
+            chip = restore(key);
+        }
+        if (chip != null) {
+            ChipMetrics.getListener().onDrawableCacheHit(resId);
+            return chip;
+        }
+        long start = ChipMetrics.begin("ChipSpan:inflate");
+        chip = ChipDrawable.createFromResource(themed, resId);
+        chip.setText(text);
+        chip.setBounds(0, 0, chip.getIntrinsicWidth(), chip.getIntrinsicHeight());
+        mCache.put(key, chip);
+        mSizes.put(key, pack(chip.getIntrinsicWidth(), chip.getIntrinsicHeight()));
+        ChipMetrics.getListener().onDrawableInflated(resId, ChipMetrics.end(start));
+        return chip;
+    }
+
+    /**
+     * 不创建新的drawable，计算chip的尺寸，结果写入outBounds(left、top为0)
+     * 与{@link #obtain}得到的drawable的bounds一致；相同的(text, resId, configuration, theme)只测量一次
+     */
+    public void measure(@NonNull Context context, String text, @XmlRes int resId, @NonNull Rect outBounds) {
+        Context themed = themedContext(context);
+        Key key = new Key(context, themed, text, resId);
+        Long size = mSizes.get(key);
+        if (size != null) {
+            outBounds.set(0, 0, (int) (size >>> 32), (int) (long) size);
+            return;
+        }
+        long start = ChipMetrics.begin("ChipSpan:measure");
+        ChipDrawable template = template(context, themed, resId);
+        int width;
+        int height;
+        synchronized (template) {
+            template.setText(text);
+            width = template.getIntrinsicWidth();
+            height = template.getIntrinsicHeight();
+        }
+        mSizes.put(key, pack(width, height));
+        outBounds.set(0, 0, width, height);
+        ChipMetrics.getListener().onChipMeasured(resId, ChipMetrics.end(start));
+    }
+
+    private ChipDrawable template(Context context, Context themed, @XmlRes int resId) {
+        Key templateKey = new Key(context, themed, null, resId);
+        ChipDrawable template = mTemplates.get(templateKey);
+        if (template == null) {
+            template = ChipDrawable.createFromResource(themed, resId);
+            mTemplates.put(templateKey, template);
+        }
+        return template;
+    }
+
+    /**
+     * 在后台线程预先解析chip的xml样式：inflate模板drawable并测量一次文本，
+     * 把xml解析、属性和样式解析、字体加载以及类加载的开销从第一帧中移走
+     * 模板按主题缓存，context必须与之后显示chip的View使用同一主题，通常在Activity#onCreate中、setContentView之前
+     * 传入Activity；用Application预热的模板带的是Application的主题，Activity中不会命中
+     */
+    public void prewarm(@NonNull final Context context, @XmlRes final int... resIds) {
+        //主题在调用线程上解析，后台线程只做inflate和测量
+        final Context themed = themedContext(context);
+        PREWARM_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int resId : resIds) {
+                    long start = ChipMetrics.begin("ChipSpan:prewarm");
+                    ChipDrawable template = template(context, themed, resId);
+                    synchronized (template) {
+                        template.setText("Chip");
+                        template.getIntrinsicWidth();
+                    }
+                    ChipMetrics.getListener().onPrewarmed(resId, ChipMetrics.end(start));
+                }
+            }
+        });
+    }
+
+    private void release(Key key, ChipDrawable drawable) {
+        synchronized (mReleased) {
+            purge();
+            mReleased.put(key, new ReleasedRef(key, drawable, mCollected));
+        }
+    }
+
+    /**
+     * @return 还没有被回收的已淘汰drawable，找到时放回LRU
+     */
+    private ChipDrawable restore(Key key) {
+        ChipDrawable chip;
+        synchronized (mReleased) {
+            purge();
+            ReleasedRef ref = mReleased.remove(key);
+            chip = ref != null ? ref.get() : null;
+        }
+        if (chip != null) {
+            mCache.put(key, chip);
+        }
+        return chip;
+    }
+
+    private void purge() {
+        Reference<? extends ChipDrawable> ref;
+        while ((ref = mCollected.poll()) != null) {
+            Key key = ((ReleasedRef) ref).key;
+            if (mReleased.get(key) == ref) {
+                mReleased.remove(key);
+            }
+        }
+    }
+
+    private static long pack(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    /**
+     * @return 与context的主题等价的共享主题；API 24以下Theme按实例比较，每个Activity实例各有一份
+     */
+    private synchronized Context themedContext(Context context) {
+        Resources.Theme theme = context.getTheme();
+        Context themed = mThemedContexts.get(theme);
+        if (themed == null) {
+            themed = mSharedThemes.get(theme);
+            if (themed == null) {
+                themed = new ContextThemeWrapper(mAppContext, 0);
+                //setTo同时复制了样式序列，拷贝与原主题相等
+                themed.getTheme().setTo(theme);
+                mSharedThemes.put(themed.getTheme(), themed);
+            }
+            mThemedContexts.put(theme, themed);
+        }
+        return themed;
+    }
+
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    public int size() {
+        return mCache.size();
+    }
+
+    public int measuredSize() {
+        return mSizes.size();
+    }
+
+    public int measureHitCount() {
+        return mSizes.hitCount();
+    }
+
+    public int templateHitCount() {
+        return mTemplates.hitCount();
+    }
+
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+
+    public void resize(int maxSize) {
+        mCache.resize(maxSize);
+    }
+
+    public void evictAll() {
+        mCache.evictAll();
+        synchronized (mReleased) {
+            mReleased.clear();
+        }
+        mTemplates.evictAll();
+        mSizes.evictAll();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW
+                || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCache.trimToSize(mCache.size() / 2);
+            mSizes.trimToSize(mSizes.size() / 2);
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        //configuration是key的一部分，旧的条目会被LRU自然淘汰
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    private static final class ReleasedRef extends SoftReference<ChipDrawable> {
+        final Key key;
+
+        ReleasedRef(Key key, ChipDrawable drawable, ReferenceQueue<ChipDrawable> queue) {
+            super(drawable, queue);
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+        private final String text;
+        private final int resId;
+        private final int densityDpi;
+        private final float fontScale;
+        private final int uiMode;
+        /**
+         * 共享主题，强引用保证实例在key存活期间不会被复用
+         */
+        private final Context theme;
+        private final int hash;
+
+        Key(Context context, Context theme, String text, int resId) {
+            Configuration config = context.getResources().getConfiguration();
+            this.text = text;
+            this.resId = resId;
+            this.densityDpi = config.densityDpi;
+            this.fontScale = config.fontScale;
+            this.uiMode = config.uiMode;
+            this.theme = theme;
+            int h = text != null ? text.hashCode() : 0;
+            h = 31 * h + resId;
+            h = 31 * h + densityDpi;
+            h = 31 * h + Float.floatToIntBits(fontScale);
+            h = 31 * h + uiMode;
+            h = 31 * h + System.identityHashCode(theme);
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return resId == key.resId
+                    && densityDpi == key.densityDpi
+                    && Float.compare(fontScale, key.fontScale) == 0
+                    && uiMode == key.uiMode
+                    && theme == key.theme
+                    && (text != null ? text.equals(key.text) : key.text == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package github.hotstu.chipspan;
+
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.XmlRes;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 直接在TextView的Editable上批量编辑chip
+ * 修改作用在一个工作窗口上：窗口只复制被修改过的区间(连同其中的ChipSpan)，窗口外的文本直接从Editable读取，
+ * {@link #endBatch()}时用窗口一次性替换Editable中对应的区间，N次修改只触发一次relayout和invalidate；
+ * 不要和bind:chipList同时用在一个TextView上
+ * @since 10/17/26
+ */
+public class ChipEditor {
+    private final TextView mTextView;
+    private final int mRes;
+    private int mBatchDepth;
+    private Editable mEditable;
+    /**
+     * 工作文本 = Editable[0, mWindowStart) + mWindow + Editable[mWindowEnd, length)，
+     * 还没有修改时为null
+     */
+    private SpannableStringBuilder mWindow;
+    private int mWindowStart;
+    private int mWindowEnd;
+
+    private ChipEditor(TextView textView, @XmlRes int res) {
+        this.mTextView = textView;
+        this.mRes = res;
+    }
+
+    public static ChipEditor of(@NonNull TextView textView) {
+        return of(textView, R.xml.standalone_chip_action);
+    }
+
+    /**
+     * @param res 新增chip使用的样式
+     */
+    public static ChipEditor of(@NonNull TextView textView, @XmlRes int res) {
+        if (!(textView.getText() instanceof Editable)) {
+            textView.setText(textView.getText(), TextView.BufferType.EDITABLE);
+        }
+        return new ChipEditor(textView, res);
+    }
+
+    /**
+     * 开始一组修改，可以嵌套，最外层的{@link #endBatch()}提交
+     */
+    public ChipEditor beginBatch() {
+        if (mBatchDepth++ == 0) {
+            mEditable = (Editable) mTextView.getText();
+            mWindow = null;
+        }
+        return this;
+    }
+
+    public void endBatch() {
+        if (mBatchDepth == 0 || --mBatchDepth > 0) {
+            return;
+        }
+        Editable editable = mEditable;
+        SpannableStringBuilder window = mWindow;
+        mEditable = null;
+        mWindow = null;
+        if (window == null) {
+            return;
+        }
+        mTextView.beginBatchEdit();
+        try {
+            editable.replace(mWindowStart, mWindowEnd, window);
+            attachSpans(editable, window, mWindowStart);
+        } finally {
+            mTextView.endBatchEdit();
+        }
+    }
+
+    /**
+     * replace会把窗口中的ChipSpan(同一个对象)复制到Editable上，但跳过Editable上已经存在的span；
+     * 恰好覆盖整个被替换区间的span不会被replace移除，这里把位置不对的span重新设置
+     */
+    private static void attachSpans(Editable editable, Spanned window, int offset) {
+        for (ChipSpan span : window.getSpans(0, window.length(), ChipSpan.class)) {
+            int start = offset + window.getSpanStart(span);
+            int end = offset + window.getSpanEnd(span);
+            if (editable.getSpanStart(span) != start || editable.getSpanEnd(span) != end) {
+                editable.setSpan(span, start, end, window.getSpanFlags(span));
+            }
+        }
+    }
+
+    public ChipEditor addAll(@NonNull Collection<String> texts) {
+        beginBatch();
+        insertAt(length(), chips(texts));
+        endBatch();
+        return this;
+    }
+
+    /**
+     * 追加一个带业务id和payload的chip，之后可以用{@link ChipIdIndex}按id找到它
+     */
+    public ChipEditor add(@NonNull String text, long id, @Nullable Object payload) {
+        ChipSpan span = new ChipSpan(mTextView.getContext(), text, mRes);
+        span.setId(id);
+        span.setPayload(payload);
+        SpannableStringBuilder sb = new SpannableStringBuilder();
+        ChipSpanBindings.appendChip(sb, span);
+        beginBatch();
+        insertAt(length(), sb);
+        endBatch();
+        return this;
+    }
+
+    /**
+     * 按id删除chip
+     */
+    public ChipEditor remove(long id) {
+        ChipSpan span = ChipIdIndex.of(mTextView).find(id);
+        return span != null ? remove(span) : this;
+    }
+
+    /**
+     * @param index 插入到第index个chip之前
+     */
+    public ChipEditor addAll(int index, @NonNull Collection<String> texts) {
+        beginBatch();
+        insertAt(chipStart(index), chips(texts));
+        endBatch();
+        return this;
+    }
+
+    public ChipEditor remove(@NonNull IChip chip) {
+        return removeAll(Collections.singletonList(chip));
+    }
+
+    public ChipEditor removeAll(@NonNull Collection<? extends IChip> chips) {
+        beginBatch();
+        for (IChip chip : chips) {
+            int start = spanStart(chip);
+            if (start >= 0) {
+                delete(start, segmentEnd(chip));
+            }
+        }
+        endBatch();
+        return this;
+    }
+
+    /**
+     * 用新的文本替换chip，位置不变
+     */
+    public ChipEditor replace(@NonNull IChip chip, @NonNull String text) {
+        beginBatch();
+        int start = spanStart(chip);
+        if (start >= 0) {
+            delete(start, segmentEnd(chip));
+            insertAt(start, chips(Collections.singletonList(text)));
+        }
+        endBatch();
+        return this;
+    }
+
+    /**
+     * 把chip移动到第toIndex个位置(按移动之后的顺序计)，span和drawable原样保留
+     */
+    public ChipEditor move(@NonNull IChip chip, int toIndex) {
+        beginBatch();
+        int start = spanStart(chip);
+        if (start >= 0) {
+            int end = segmentEnd(chip);
+            int chipLength = spanEnd(chip) - start;
+            String segment = substring(start, end);
+            delete(start, end);
+            int at = chipStart(toIndex);
+            insertAt(at, segment);
+            //只搬动文本，span显式设置回去，不依赖文本拷贝时的span复制
+            mWindow.setSpan(chip, at - mWindowStart, at - mWindowStart + chipLength,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        endBatch();
+        return this;
+    }
+
+    private SpannableStringBuilder chips(Collection<String> texts) {
+        SpannableStringBuilder sb = new SpannableStringBuilder();
+        for (String text : texts) {
+            ChipSpanBindings.appendChip(sb, new ChipSpan(mTextView.getContext(), text, mRes));
+        }
+        return sb;
+    }
+
+    private int length() {
+        int length = mEditable.length();
+        return mWindow != null ? length - (mWindowEnd - mWindowStart) + mWindow.length() : length;
+    }
+
+    /**
+     * 窗口之后的文本在工作文本和Editable中的偏移差
+     */
+    private int shift() {
+        return mWindow.length() - (mWindowEnd - mWindowStart);
+    }
+
+    private char charAt(int index) {
+        if (mWindow == null || index < mWindowStart) {
+            return mEditable.charAt(index);
+        }
+        if (index < mWindowStart + mWindow.length()) {
+            return mWindow.charAt(index - mWindowStart);
+        }
+        return mEditable.charAt(index - shift());
+    }
+
+    private String substring(int start, int end) {
+        ensureWindow(start, end);
+        return TextUtils.substring(mWindow, start - mWindowStart, end - mWindowStart);
+    }
+
+    /**
+     * @return chip在工作文本中的起点，已经删除或不存在时返回-1
+     */
+    private int spanStart(Object chip) {
+        return toWorking(chip, mWindow != null ? mWindow.getSpanStart(chip) : -1, mEditable.getSpanStart(chip));
+    }
+
+    private int spanEnd(Object chip) {
+        return toWorking(chip, mWindow != null ? mWindow.getSpanEnd(chip) : -1, mEditable.getSpanEnd(chip));
+    }
+
+    private int toWorking(Object chip, int inWindow, int inEditable) {
+        if (inWindow >= 0) {
+            return mWindowStart + inWindow;
+        }
+        if (inEditable < 0 || mWindow == null || inEditable < mWindowStart) {
+            return inEditable;
+        }
+        //在Editable中被窗口覆盖的区间里，却不在窗口中：已经被删除
+        return inEditable >= mWindowEnd ? inEditable + shift() : -1;
+    }
+
+    private void delete(int start, int end) {
+        ensureWindow(start, end);
+        mWindow.delete(start - mWindowStart, end - mWindowStart);
+    }
+
+    private void insertAt(int at, CharSequence text) {
+        ensureWindow(at, at);
+        mWindow.insert(at - mWindowStart, text);
+    }
+
+    /**
+     * 扩大窗口使其覆盖工作文本中的[start, end)，只从Editable复制新覆盖的部分
+     */
+    private void ensureWindow(int start, int end) {
+        if (mWindow == null) {
+            mWindow = copy(start, end);
+            mWindowStart = start;
+            mWindowEnd = end;
+            return;
+        }
+        if (start < mWindowStart) {
+            mWindow.insert(0, copy(start, mWindowStart));
+            mWindowStart = start;
+        }
+        int windowEnd = mWindowStart + mWindow.length();
+        if (end > windowEnd) {
+            int editableEnd = end - shift();
+            mWindow.append(copy(mWindowEnd, editableEnd));
+            mWindowEnd = editableEnd;
+        }
+    }
+
+    /**
+     * 复制Editable的[start, end)，只带上完全落在其中的ChipSpan，选区、输入法等span留在Editable上
+     */
+    private SpannableStringBuilder copy(int start, int end) {
+        SpannableStringBuilder sb = new SpannableStringBuilder(TextUtils.substring(mEditable, start, end));
+        for (ChipSpan span : mEditable.getSpans(start, end, ChipSpan.class)) {
+            int spanStart = mEditable.getSpanStart(span);
+            int spanEnd = mEditable.getSpanEnd(span);
+            if (spanStart >= start && spanEnd <= end) {
+                sb.setSpan(span, spanStart - start, spanEnd - start, mEditable.getSpanFlags(span));
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * chip占用的文本包括后面的一个空格
+     */
+    private int segmentEnd(IChip chip) {
+        int end = spanEnd(chip);
+        if (end < length() && charAt(end) == ' ') {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * @return 第index个chip在工作文本中的起点，index超出时返回文本末尾
+     */
+    private int chipStart(int index) {
+        if (mWindow == null) {
+            ChipSpan[] chips = sortedChips(mEditable, 0, mEditable.length());
+            return index < chips.length ? mEditable.getSpanStart(chips[index]) : mEditable.length();
+        }
+        ChipSpan[] before = sortedChips(mEditable, 0, mWindowStart);
+        if (index < before.length) {
+            return mEditable.getSpanStart(before[index]);
+        }
+        index -= before.length;
+        ChipSpan[] inWindow = sortedChips(mWindow, 0, mWindow.length());
+        if (index < inWindow.length) {
+            return mWindowStart + mWindow.getSpanStart(inWindow[index]);
+        }
+        index -= inWindow.length;
+        ChipSpan[] after = sortedChips(mEditable, mWindowEnd, mEditable.length());
+        return index < after.length ? mEditable.getSpanStart(after[index]) + shift() : length();
+    }
+
+    /**
+     * @return 完全落在[start, end)中的chip，按位置排序
+     */
+    private static ChipSpan[] sortedChips(final Spanned text, int start, int end) {
+        ChipSpan[] spans = text.getSpans(start, end, ChipSpan.class);
+        int count = 0;
+        for (ChipSpan span : spans) {
+            if (text.getSpanStart(span) >= start && text.getSpanEnd(span) <= end) {
+                spans[count++] = span;
+            }
+        }
+        ChipSpan[] chips = Arrays.copyOf(spans, count);
+        Arrays.sort(chips, new Comparator<ChipSpan>() {
+            @Override
+            public int compare(ChipSpan o1, ChipSpan o2) {
+                return text.getSpanStart(o1) - text.getSpanStart(o2);
+            }
+        });
+        return chips;
+    }
+}
@@ -0,0 +1,107 @@
+package github.hotstu.chipspan;
+
+import android.text.NoCopySpan;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 每个TextView一份的id到chip的哈希索引，按{@link IChip#getId()}在O(1)内找到chip及其文本区间
+ * 索引作为SpanWatcher挂在文本上，chip的增删增量维护，不需要getSpans扫描
+ * @since 10/17/26
+ */
+public class ChipIdIndex implements SpanWatcher, NoCopySpan {
+    private final HashMap<Long, ChipSpan> mChips = new HashMap<>();
+    private Spannable mText;
+
+    /**
+     * @return 与TextView当前文本一致的索引，文本对象被替换后会重建一次
+     */
+    @NonNull
+    public static ChipIdIndex of(@NonNull TextView textView) {
+        Object tag = textView.getTag(R.id.tag_chip_ids);
+        ChipIdIndex index;
+        if (tag instanceof ChipIdIndex) {
+            index = (ChipIdIndex) tag;
+        } else {
+            index = new ChipIdIndex();
+            textView.setTag(R.id.tag_chip_ids, index);
+        }
+        index.ensure(textView.getText());
+        return index;
+    }
+
+    void ensure(CharSequence text) {
+        if (text == mText) {
+            return;
+        }
+        if (mText != null) {
+            mText.removeSpan(this);
+        }
+        mChips.clear();
+        mText = null;
+        if (!(text instanceof Spannable)) {
+            return;
+        }
+        mText = (Spannable) text;
+        for (ChipSpan span : mText.getSpans(0, mText.length(), ChipSpan.class)) {
+            mChips.put(span.getId(), span);
+        }
+        mText.setSpan(this, 0, mText.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+    }
+
+    @Nullable
+    public ChipSpan find(long id) {
+        return mChips.get(id);
+    }
+
+    /**
+     * @return chip在文本中的起始位置，不存在时返回-1
+     */
+    public int getStart(long id) {
+        ChipSpan span = mChips.get(id);
+        return span != null ? mText.getSpanStart(span) : -1;
+    }
+
+    /**
+     * @return chip在文本中的结束位置，不存在时返回-1
+     */
+    public int getEnd(long id) {
+        ChipSpan span = mChips.get(id);
+        return span != null ? mText.getSpanEnd(span) : -1;
+    }
+
+    public int size() {
+        return mChips.size();
+    }
+
+    @Override
+    public void onSpanAdded(Spannable text, Object what, int start, int end) {
+        if (what instanceof ChipSpan) {
+            ChipSpan span = (ChipSpan) what;
+            mChips.put(span.getId(), span);
+        }
+    }
+
+    @Override
+    public void onSpanRemoved(Spannable text, Object what, int start, int end) {
+        if (what instanceof ChipSpan) {
+            long id = ((ChipSpan) what).getId();
+            //同一个id可能已经被新的span占用
+            if (mChips.get(id) == what) {
+                mChips.remove(id);
+            }
+        }
+    }
+
+    @Override
+    public void onSpanChanged(Spannable text, Object what, int ostart, int oend, int nstart, int nend) {
+    }
+}
@@ -0,0 +1,382 @@
+package github.hotstu.chipspan;
+
+import android.graphics.Rect;
+import android.text.Editable;
+import android.text.Layout;
+import android.text.NoCopySpan;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 每个TextView一份的chip像素区域索引，每次layout只构建一次，查询是无分配的二分查找
+ * 坐标系为Layout坐标(不含padding和scroll)
+ * @since 10/17/26
+ */
+public class ChipLayoutIndex implements SpanWatcher, TextWatcher, NoCopySpan {
+    private static final int[] EMPTY_INT = new int[0];
+    private static final ChipSpan[] EMPTY_SPAN = new ChipSpan[0];
+
+    private Layout mLayout;
+    private CharSequence mText;
+    private boolean mDirty = true;
+
+    private int mCount;
+    private ChipSpan[] mSpans = EMPTY_SPAN;
+    private int[] mLefts = EMPTY_INT;
+    private int[] mTops = EMPTY_INT;
+    private int[] mRights = EMPTY_INT;
+    private int[] mBottoms = EMPTY_INT;
+    private final IdentityHashMap<ChipSpan, Integer> mPositions = new IdentityHashMap<>();
+    /**
+     * 查询屏幕位置用的临时数组，只在主线程使用
+     */
+    private final int[] mLocation = new int[2];
+
+    /**
+     * @return 与TextView当前layout一致的索引，layout或文本变化后会重建
+     */
+    @NonNull
+    public static ChipLayoutIndex of(@NonNull TextView textView) {
+        Object tag = textView.getTag(R.id.tag_chip_index);
+        ChipLayoutIndex index;
+        if (tag instanceof ChipLayoutIndex) {
+            index = (ChipLayoutIndex) tag;
+        } else {
+            index = new ChipLayoutIndex();
+            textView.setTag(R.id.tag_chip_index, index);
+        }
+        index.ensure(textView.getLayout(), textView.getText());
+        return index;
+    }
+
+    void ensure(@Nullable Layout layout, CharSequence text) {
+        if (!mDirty && layout == mLayout && text == mText) {
+            return;
+        }
+        if (mText instanceof Spannable && mText != text) {
+            ((Spannable) mText).removeSpan(this);
+        }
+        mLayout = layout;
+        mText = text;
+        mDirty = false;
+        if (text instanceof Spannable && ((Spannable) text).getSpanStart(this) < 0) {
+            ((Spannable) text).setSpan(this, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        }
+        build(layout, text);
+    }
+
+    private void build(Layout layout, CharSequence text) {
+        mCount = 0;
+        mPositions.clear();
+        if (layout == null || !(text instanceof Spanned)) {
+            return;
+        }
+        final Spanned spanned = (Spanned) text;
+        ChipSpan[] spans = spanned.getSpans(0, spanned.length(), ChipSpan.class);
+        int n = spans.length;
+        if (mSpans.length < n) {
+            mSpans = new ChipSpan[n];
+            mLefts = new int[n];
+            mTops = new int[n];
+            mRights = new int[n];
+            mBottoms = new int[n];
+        }
+        Arrays.sort(spans, new Comparator<ChipSpan>() {
+            @Override
+            public int compare(ChipSpan o1, ChipSpan o2) {
+                return spanned.getSpanStart(o1) - spanned.getSpanStart(o2);
+            }
+        });
+        for (ChipSpan span : spans) {
+            int start = spanned.getSpanStart(span);
+            int end = spanned.getSpanEnd(span);
+            int line = layout.getLineForOffset(start);
+            float x0 = layout.getPrimaryHorizontal(start);
+            float x1 = layout.getLineForOffset(end) == line
+                    ? layout.getPrimaryHorizontal(end) : layout.getLineRight(line);
+            mSpans[mCount] = span;
+            mLefts[mCount] = (int) Math.min(x0, x1);
+            mRights[mCount] = (int) Math.max(x0, x1);
+            mTops[mCount] = layout.getLineTop(line);
+            mBottoms[mCount] = layout.getLineBottom(line);
+            mCount++;
+        }
+        //同一行内按x排序，保证RTL文本也可以二分查找
+        int lineStart = 0;
+        for (int i = 1; i <= mCount; i++) {
+            if (i == mCount || mTops[i] != mTops[lineStart]) {
+                sortLineByLeft(lineStart, i);
+                lineStart = i;
+            }
+        }
+        for (int i = mCount; i < mSpans.length; i++) {
+            mSpans[i] = null;
+        }
+        for (int i = 0; i < mCount; i++) {
+            mPositions.put(mSpans[i], i);
+        }
+    }
+
+    private void sortLineByLeft(int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && mLefts[j - 1] > mLefts[j]; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        ChipSpan s = mSpans[i];
+        mSpans[i] = mSpans[j];
+        mSpans[j] = s;
+        int t = mLefts[i];
+        mLefts[i] = mLefts[j];
+        mLefts[j] = t;
+        t = mRights[i];
+        mRights[i] = mRights[j];
+        mRights[j] = t;
+    }
+
+    /**
+     * @return 位于(x, y)的chip，不存在时返回null
+     */
+    @Nullable
+    public ChipSpan findChipAt(int x, int y) {
+        int i = findIndexAt(x, y);
+        return i >= 0 ? mSpans[i] : null;
+    }
+
+    /**
+     * @return 位于(x, y)的chip的序号，不存在时返回-1
+     */
+    public int findIndexAt(int x, int y) {
+        //第一个bottom > y的chip
+        int lo = 0;
+        int hi = mCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mBottoms[mid] <= y) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == mCount || mTops[lo] > y) {
+            return -1;
+        }
+        //同一行中第一个right > x的chip
+        int top = mTops[lo];
+        hi = lo;
+        while (hi < mCount && mTops[hi] == top) {
+            hi++;
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mRights[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == mCount || mTops[lo] != top || mLefts[lo] > x) {
+            return -1;
+        }
+        return lo;
+    }
+
+    /**
+     * @return chip在索引中的序号(按行、再按x排序)，不在当前文本中时返回-1
+     */
+    public int indexOf(@NonNull ChipSpan span) {
+        Integer position = mPositions.get(span);
+        return position != null ? position : -1;
+    }
+
+    @NonNull
+    public ChipSpan getChip(int index) {
+        return mSpans[index];
+    }
+
+    public void getChipBounds(int index, @NonNull Rect out) {
+        out.set(mLefts[index], mTops[index], mRights[index], mBottoms[index]);
+    }
+
+    /**
+     * 方向键导航：同一行内前后移动，跨行时选择x方向最接近的chip
+     *
+     * @param direction {@link View#FOCUS_LEFT}等方向常量
+     * @return 相邻chip的序号，不存在时返回-1
+     */
+    public int findNeighbor(int index, int direction) {
+        switch (direction) {
+            case View.FOCUS_LEFT:
+            case View.FOCUS_BACKWARD:
+                return index > 0 ? index - 1 : -1;
+            case View.FOCUS_RIGHT:
+            case View.FOCUS_FORWARD:
+                return index + 1 < mCount ? index + 1 : -1;
+            case View.FOCUS_UP:
+                return index >= 0 && index < mCount ? nearestInLine(mTops[index] - 1, centerX(index)) : -1;
+            case View.FOCUS_DOWN:
+                return index >= 0 && index < mCount ? nearestInLine(mBottoms[index], centerX(index)) : -1;
+            default:
+                return -1;
+        }
+    }
+
+    private int centerX(int index) {
+        return (mLefts[index] + mRights[index]) / 2;
+    }
+
+    /**
+     * @return 包含y的那一行中x方向最接近的chip
+     */
+    private int nearestInLine(int y, int x) {
+        if (y < 0) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = mCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mBottoms[mid] <= y) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == mCount) {
+            return -1;
+        }
+        //行内最后一个left <= x的chip
+        int top = mTops[lo];
+        int first = lo;
+        hi = lo;
+        while (hi < mCount && mTops[hi] == top) {
+            hi++;
+        }
+        int last = hi - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mLefts[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return Math.max(first, Math.min(lo - 1, last));
+    }
+
+    /**
+     * 把chip的区域(Layout坐标)写入out
+     *
+     * @return chip不在当前文本中时返回false
+     */
+    public boolean getChipBounds(@NonNull ChipSpan span, @NonNull Rect out) {
+        Integer position = mPositions.get(span);
+        if (position == null) {
+            return false;
+        }
+        int i = position;
+        out.set(mLefts[i], mTops[i], mRights[i], mBottoms[i]);
+        return true;
+    }
+
+    /**
+     * 只重绘chip所在的区域
+     *
+     * @param scratch 用来计算区域的临时Rect
+     * @return chip不在当前文本中时返回false，什么也不做
+     */
+    boolean invalidateChip(@NonNull TextView textView, @NonNull ChipSpan span, @NonNull Rect scratch) {
+        if (!getChipBoundsInView(textView, span, scratch)) {
+            return false;
+        }
+        textView.postInvalidate(scratch.left, scratch.top, scratch.right, scratch.bottom);
+        return true;
+    }
+
+    /**
+     * 把chip在TextView中的区域写入out，不分配内存
+     * 坐标只计入padding，不减滚动，与onDraw中的canvas以及View#invalidate(int, int, int, int)一致
+     * (invalidate会自己减去滚动)
+     *
+     * @return chip不在当前文本中时返回false
+     */
+    public boolean getChipBoundsInView(@NonNull TextView textView, @NonNull ChipSpan span, @NonNull Rect out) {
+        if (!getChipBounds(span, out)) {
+            return false;
+        }
+        out.offset(textView.getTotalPaddingLeft(), textView.getTotalPaddingTop());
+        return true;
+    }
+
+    /**
+     * 把chip在屏幕上的区域(已经减去滚动)写入out，用于锚定popup、tooltip
+     * 每次都重新取TextView的屏幕位置，平移、动画中的View也是准确的
+     *
+     * @return chip不在当前文本中时返回false
+     */
+    public boolean getChipBoundsOnScreen(@NonNull TextView textView, @NonNull ChipSpan span, @NonNull Rect out) {
+        if (!getChipBoundsInView(textView, span, out)) {
+            return false;
+        }
+        textView.getLocationOnScreen(mLocation);
+        out.offset(mLocation[0] - textView.getScrollX(), mLocation[1] - textView.getScrollY());
+        return true;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public void invalidate() {
+        mDirty = true;
+    }
+
+    @Override
+    public void onSpanAdded(Spannable text, Object what, int start, int end) {
+        if (what instanceof ChipSpan) {
+            mDirty = true;
+        }
+    }
+
+    @Override
+    public void onSpanRemoved(Spannable text, Object what, int start, int end) {
+        if (what instanceof ChipSpan) {
+            mDirty = true;
+        }
+    }
+
+    @Override
+    public void onSpanChanged(Spannable text, Object what, int ostart, int oend, int nstart, int nend) {
+        if (what instanceof ChipSpan) {
+            mDirty = true;
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        mDirty = true;
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+    }
+}
@@ -0,0 +1,258 @@
+package github.hotstu.chipspan;
+
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.widget.TextView;
+
+import androidx.annotation.XmlRes;
+import androidx.databinding.ObservableList;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 监听ObservableList的区间变化，只在TextView的Editable里增删受影响的chip，其余ChipSpan原样复用
+ * @since 10/17/26
+ */
+class ChipListBinder extends ObservableList.OnListChangedCallback<ObservableList<String>> {
+    private final WeakReference<TextView> mViewRef;
+    private final ObservableList<String> mList;
+    private final int mRes;
+    /**
+     * 与mList一一对应的span，用来定位每个chip在文本中的位置
+     */
+    private final ArrayList<ChipSpan> mSpans = new ArrayList<>();
+
+    ChipListBinder(TextView v, ObservableList<String> list, @XmlRes int res) {
+        this.mViewRef = new WeakReference<>(v);
+        this.mList = list;
+        this.mRes = res;
+    }
+
+    static void bind(TextView v, ObservableList<String> list, @XmlRes int res) {
+        ChipTextTask.cancel(v);
+        Object tag = v.getTag(R.id.tag_chip_list);
+        if (tag instanceof ChipListBinder) {
+            ChipListBinder old = (ChipListBinder) tag;
+            if (old.mList == list && old.mRes == res && old.isInSync(v)) {
+                //已经通过回调增量更新过了
+                return;
+            }
+            old.unbind();
+        }
+        v.setTag(R.id.tag_chip_list, null);
+        if (list == null) {
+            v.setText(null);
+            return;
+        }
+        ChipListBinder binder = new ChipListBinder(v, list, res);
+        v.setTag(R.id.tag_chip_list, binder);
+        list.addOnListChangedCallback(binder);
+        binder.rebuild(v);
+    }
+
+    static void unbind(TextView v) {
+        Object tag = v.getTag(R.id.tag_chip_list);
+        if (tag instanceof ChipListBinder) {
+            ((ChipListBinder) tag).unbind();
+            v.setTag(R.id.tag_chip_list, null);
+        }
+    }
+
+    /**
+     * @return chip在绑定列表中的位置，mSpans按文本顺序排列，二分查找即可；不属于这个列表时返回-1
+     */
+    static int positionOf(TextView v, IChip chip) {
+        Object tag = v.getTag(R.id.tag_chip_list);
+        if (!(tag instanceof ChipListBinder) || !(v.getText() instanceof Spanned)) {
+            return -1;
+        }
+        return ((ChipListBinder) tag).positionOf((Spanned) v.getText(), chip);
+    }
+
+    private int positionOf(Spanned text, IChip chip) {
+        int offset = text.getSpanStart(chip);
+        int lo = 0;
+        int hi = mSpans.size() - 1;
+        while (offset >= 0 && lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int start = text.getSpanStart(mSpans.get(mid));
+            if (start < offset) {
+                lo = mid + 1;
+            } else if (start > offset) {
+                hi = mid - 1;
+            } else {
+                return mSpans.get(mid) == chip ? mid : -1;
+            }
+        }
+        return -1;
+    }
+
+    private void unbind() {
+        mList.removeOnListChangedCallback(this);
+    }
+
+    /**
+     * @return 文本中的chip与列表逐项一致
+     */
+    private boolean isInSync(TextView v) {
+        if (!(v.getText() instanceof Editable) || mSpans.size() != mList.size()) {
+            return false;
+        }
+        Editable text = (Editable) v.getText();
+        for (int i = 0; i < mSpans.size(); i++) {
+            ChipSpan span = mSpans.get(i);
+            if (text.getSpanStart(span) < 0 || !TextUtils.equals(span.getText(), mList.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebuild(TextView v) {
+        long start = ChipMetrics.begin("ChipSpan:bind");
+        mSpans.clear();
+        SpannableStringBuilder sb = new SpannableStringBuilder();
+        appendChips(v, sb, mList, 0, mList.size());
+        v.setText(sb, TextView.BufferType.EDITABLE);
+        ChipMetrics.getListener().onBind(mSpans.size(), ChipMetrics.end(start));
+    }
+
+    private void appendChips(TextView v, SpannableStringBuilder sb, List<String> texts, int start, int end) {
+        for (int i = start; i < end; i++) {
+            ChipSpan span = new ChipSpan(v.getContext(), texts.get(i), mRes);
+            ChipSpanBindings.appendChip(sb, span);
+            mSpans.add(i, span);
+        }
+    }
+
+    /**
+     * @return 第index个chip在文本中的起始位置，-1表示文本已经被外部修改
+     */
+    private int offsetOf(Editable text, int index) {
+        if (index >= mSpans.size()) {
+            return text.length();
+        }
+        return text.getSpanStart(mSpans.get(index));
+    }
+
+    /**
+     * @return 可以增量更新的TextView，否则返回null
+     */
+    private TextView target() {
+        TextView v = mViewRef.get();
+        if (v == null || v.getTag(R.id.tag_chip_list) != this) {
+            unbind();
+            return null;
+        }
+        return v;
+    }
+
+    private void remove(TextView v, Editable text, int start, int count) {
+        int from = offsetOf(text, start);
+        int to = offsetOf(text, start + count);
+        if (from < 0 || to < 0) {
+            rebuild(v);
+            return;
+        }
+        mSpans.subList(start, start + count).clear();
+        text.delete(from, to);
+    }
+
+    private void insert(TextView v, Editable text, ObservableList<String> sender, int start, int count) {
+        int at = offsetOf(text, start);
+        if (at < 0) {
+            rebuild(v);
+            return;
+        }
+        SpannableStringBuilder sb = new SpannableStringBuilder();
+        appendChips(v, sb, sender, start, start + count);
+        text.insert(at, sb);
+    }
+
+    @Override
+    public void onChanged(ObservableList<String> sender) {
+        TextView v = target();
+        if (v != null) {
+            rebuild(v);
+        }
+    }
+
+    @Override
+    public void onItemRangeChanged(ObservableList<String> sender, int positionStart, int itemCount) {
+        TextView v = target();
+        if (v == null) {
+            return;
+        }
+        if (!(v.getText() instanceof Editable)) {
+            rebuild(v);
+            return;
+        }
+        Editable text = (Editable) v.getText();
+        remove(v, text, positionStart, itemCount);
+        if (mSpans.size() + itemCount == sender.size()) {
+            insert(v, (Editable) v.getText(), sender, positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemRangeInserted(ObservableList<String> sender, int positionStart, int itemCount) {
+        TextView v = target();
+        if (v == null) {
+            return;
+        }
+        if (!(v.getText() instanceof Editable) || mSpans.size() + itemCount != sender.size()) {
+            rebuild(v);
+            return;
+        }
+        insert(v, (Editable) v.getText(), sender, positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeMoved(ObservableList<String> sender, int fromPosition, int toPosition, int itemCount) {
+        TextView v = target();
+        if (v == null) {
+            return;
+        }
+        if (!(v.getText() instanceof Editable)) {
+            rebuild(v);
+            return;
+        }
+        Editable text = (Editable) v.getText();
+        int from = offsetOf(text, fromPosition);
+        int to = offsetOf(text, fromPosition + itemCount);
+        if (from < 0 || to < 0) {
+            rebuild(v);
+            return;
+        }
+        //把原来的span连同文本一起搬走，drawable不需要重新创建
+        CharSequence moved = text.subSequence(from, to);
+        List<ChipSpan> spans = new ArrayList<>(mSpans.subList(fromPosition, fromPosition + itemCount));
+        mSpans.subList(fromPosition, fromPosition + itemCount).clear();
+        text.delete(from, to);
+        int at = offsetOf(text, toPosition);
+        if (at < 0) {
+            rebuild(v);
+            return;
+        }
+        text.insert(at, moved);
+        mSpans.addAll(toPosition, spans);
+    }
+
+    @Override
+    public void onItemRangeRemoved(ObservableList<String> sender, int positionStart, int itemCount) {
+        TextView v = target();
+        if (v == null) {
+            return;
+        }
+        if (!(v.getText() instanceof Editable) || mSpans.size() - itemCount != sender.size()) {
+            rebuild(v);
+            return;
+        }
+        remove(v, (Editable) v.getText(), positionStart, itemCount);
+    }
+}
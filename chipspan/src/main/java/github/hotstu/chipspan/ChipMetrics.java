@@ -0,0 +1,101 @@
+package github.hotstu.chipspan;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.XmlRes;
+import androidx.core.os.TraceCompat;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 渲染和触摸热路径的埋点：可插拔的监听器(默认空实现)以及可选的systrace区段
+ * 未设置监听器且未开启trace时，各个埋点只有一次volatile读，可以在release包中常开
+ * @since 10/17/26
+ */
+public final class ChipMetrics {
+    public static final Listener NO_OP = new Listener();
+
+    private static volatile Listener sListener = NO_OP;
+    private static volatile boolean sTracing = false;
+
+    /**
+     * 所有回调都在产生事件的线程上调用(绝大多数是主线程)，实现必须足够轻量
+     */
+    public static class Listener {
+        /**
+         * 缓存未命中，新inflate了一个ChipDrawable
+         */
+        public void onDrawableInflated(@XmlRes int resId, long durationNanos) {
+        }
+
+        public void onDrawableCacheHit(@XmlRes int resId) {
+        }
+
+        /**
+         * 不创建drawable的chip尺寸测量
+         */
+        public void onChipMeasured(@XmlRes int resId, long durationNanos) {
+        }
+
+        /**
+         * {@link ChipDrawableCache#prewarm}在后台线程完成了一种样式的预热
+         */
+        public void onPrewarmed(@XmlRes int resId, long durationNanos) {
+        }
+
+        public void onChipDrawn(long durationNanos) {
+        }
+
+        /**
+         * {@link ChipTokenizer}一帧的转换，chipCount是这一帧新建的chip数量
+         */
+        public void onTokenized(int chipCount, long durationNanos) {
+        }
+
+        /**
+         * ChipSpanBindings完成一次完整的绑定
+         */
+        public void onBind(int chipCount, long durationNanos) {
+        }
+
+        public void onTouchDispatched(int action, long durationNanos) {
+        }
+    }
+
+    private ChipMetrics() {
+    }
+
+    public static void setListener(Listener listener) {
+        sListener = listener != null ? listener : NO_OP;
+    }
+
+    @NonNull
+    public static Listener getListener() {
+        return sListener;
+    }
+
+    /**
+     * 开启后chip的inflate、测量、绑定和触摸分发会以"ChipSpan:*"区段出现在systrace中
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        sTracing = enabled;
+    }
+
+    /**
+     * @return 开始时间，未开启统计时为0
+     */
+    static long begin(String section) {
+        if (sTracing) {
+            TraceCompat.beginSection(section);
+        }
+        return sListener != NO_OP ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @return 经过的时间，未开启统计时为0
+     */
+    static long end(long start) {
+        if (sTracing) {
+            TraceCompat.endSection();
+        }
+        return start != 0 ? System.nanoTime() - start : 0;
+    }
+}
@@ -1,8 +1,9 @@
 package github.hotstu.chipspan;
 
-import android.text.Layout;
+import android.graphics.Rect;
 import android.text.Spannable;
 import android.text.method.LinkMovementMethod;
+import android.text.method.MovementMethod;
 import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
 import android.view.ViewConfiguration;
@@ -16,9 +17,10 @@ import android.widget.TextView;
 public class ChipMovementMethod extends LinkMovementMethod {
     private OnClickListener onLinkClickListener;
     private OnLongClickListener onLinkLongClickListener;
-    private ChipSpan clickableSpanUnderTouchOnActionDown;
-    private LongPressTimer ongoingLongPressTimer;
-    private boolean wasLongPressRegistered;
+    // Scratch rect, only touched on the main thread.
+    private final Rect dirtyRect = new Rect();
+
+    private static ChipMovementMethod sInstance;
 
     public interface OnClickListener {
         /**
@@ -38,6 +40,18 @@ public class ChipMovementMethod extends LinkMovementMethod {
         boolean onLongClick(TextView tv, IChip span);
     }
 
+    /**
+     * Returns the shared instance for TextViews that only need the pressed state and no listeners.
+     * It is typed as a MovementMethod, like {@link LinkMovementMethod#getInstance()}, so that nobody
+     * can attach listeners to it; use {@link #newInstance()} for that.
+     */
+    public static MovementMethod getInstance() {
+        if (sInstance == null) {
+            sInstance = new ChipMovementMethod();
+        }
+        return sInstance;
+    }
+
     /**
      * Return a new instance of ChipMovementMethod.
      */
@@ -45,6 +59,12 @@ public class ChipMovementMethod extends LinkMovementMethod {
         return new ChipMovementMethod();
     }
 
+    /**
+     * A single instance may be shared by any number of TextViews, the per-gesture state is kept on each view.
+     */
+    public ChipMovementMethod() {
+    }
+
 
     /**
      * Set a listener that will get called whenever any link is clicked on the TextView.
@@ -65,6 +85,13 @@ public class ChipMovementMethod extends LinkMovementMethod {
 
     @Override
     public boolean onTouchEvent(final TextView textView, Spannable text, MotionEvent event) {
+        long start = ChipMetrics.begin("ChipSpan:touch");
+        boolean handled = handleTouchEvent(textView, text, event);
+        ChipMetrics.getListener().onTouchDispatched(event.getActionMasked(), ChipMetrics.end(start));
+        return handled;
+    }
+
+    private boolean handleTouchEvent(final TextView textView, Spannable text, MotionEvent event) {
 //        if (activeTextViewHashcode != textView.hashCode()) {
 //            // Bug workaround: TextView stops calling onTouchEvent() once any URL is highlighted.
 //            // A hacky solution is to reset any "autoLink" property set in XML. But we also want
@@ -73,35 +100,41 @@ public class ChipMovementMethod extends LinkMovementMethod {
 //            textView.setAutoLinkMask(0);
 //        }
 
-        final ChipSpan clickableSpanUnderTouch = findClickableSpanUnderTouch(textView, text, event);
-        if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            clickableSpanUnderTouchOnActionDown = clickableSpanUnderTouch;
+        final TouchState state = touchStateOf(textView);
+        final int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            state.pointerId = event.getPointerId(0);
+        }
+        // Follow the pointer that started the gesture, ignore any other finger.
+        final int pointerIndex = event.findPointerIndex(state.pointerId);
+        if (pointerIndex < 0) {
+            if (state.chipOnActionDown != null) {
+                cleanupOnTouchUp(textView);
+            }
+            return false;
+        }
+
+        final ChipSpan clickableSpanUnderTouch = findClickableSpanUnderTouch(textView, text,
+                event.getX(pointerIndex), event.getY(pointerIndex));
+        if (action == MotionEvent.ACTION_DOWN) {
+            state.chipOnActionDown = clickableSpanUnderTouch;
         }
-        final boolean touchStartedOverAClickableSpan = clickableSpanUnderTouchOnActionDown != null;
+        final boolean touchStartedOverAClickableSpan = state.chipOnActionDown != null;
 
-        switch (event.getAction()) {
+        switch (action) {
             case MotionEvent.ACTION_DOWN:
                 if (clickableSpanUnderTouch != null) {
                     highlightUrl(textView, clickableSpanUnderTouch, text);
                 }
 
                 if (touchStartedOverAClickableSpan && onLinkLongClickListener != null) {
-                    LongPressTimer.OnTimerReachedListener longClickListener = new LongPressTimer.OnTimerReachedListener() {
-                        @Override
-                        public void onTimerReached() {
-                            wasLongPressRegistered = true;
-                            textView.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
-                            removeUrlHighlightColor(textView);
-                            dispatchUrlLongClick(textView, clickableSpanUnderTouch);
-                        }
-                    };
-                    startTimerForRegisteringLongClick(textView, longClickListener);
+                    startTimerForRegisteringLongClick(textView, clickableSpanUnderTouch);
                 }
                 return touchStartedOverAClickableSpan;
 
             case MotionEvent.ACTION_UP:
                 // Register a click only if the touch started and ended on the same URL.
-                if (!wasLongPressRegistered && touchStartedOverAClickableSpan && clickableSpanUnderTouch == clickableSpanUnderTouchOnActionDown) {
+                if (!state.wasLongPressRegistered && touchStartedOverAClickableSpan && clickableSpanUnderTouch == state.chipOnActionDown) {
                     dispatchUrlClick(textView, clickableSpanUnderTouch);
                 }
                 cleanupOnTouchUp(textView);
@@ -115,13 +148,20 @@ public class ChipMovementMethod extends LinkMovementMethod {
                 cleanupOnTouchUp(textView);
                 return false;
 
+            case MotionEvent.ACTION_POINTER_UP:
+                // The finger that started the gesture was lifted while others stay down: treat it as a cancel.
+                if (event.getActionIndex() == pointerIndex) {
+                    cleanupOnTouchUp(textView);
+                }
+                return false;
+
             case MotionEvent.ACTION_MOVE:
                 // Stop listening for a long-press as soon as the user wanders off to unknown lands.
-                if (clickableSpanUnderTouch != clickableSpanUnderTouchOnActionDown) {
+                if (clickableSpanUnderTouch != state.chipOnActionDown) {
                     removeLongPressCallback(textView);
                 }
 
-                if (!wasLongPressRegistered) {
+                if (!state.wasLongPressRegistered) {
                     // Toggle highlight.
                     if (clickableSpanUnderTouch != null) {
                         highlightUrl(textView, clickableSpanUnderTouch, text);
@@ -138,22 +178,44 @@ public class ChipMovementMethod extends LinkMovementMethod {
     }
 
     private void cleanupOnTouchUp(TextView textView) {
-        wasLongPressRegistered = false;
-        clickableSpanUnderTouchOnActionDown = null;
+        TouchState state = touchStateOf(textView);
+        state.wasLongPressRegistered = false;
+        state.chipOnActionDown = null;
+        state.pointerId = MotionEvent.INVALID_POINTER_ID;
         removeUrlHighlightColor(textView);
         removeLongPressCallback(textView);
     }
 
+    /**
+     * Touch state lives on the TextView, so one ChipMovementMethod can be shared by any number of TextViews.
+     */
+    private TouchState touchStateOf(TextView textView) {
+        Object tag = textView.getTag(R.id.tag_chip_touch_state);
+        if (tag instanceof TouchState && ((TouchState) tag).owner == this) {
+            return (TouchState) tag;
+        }
+        TouchState state = new TouchState(this);
+        textView.setTag(R.id.tag_chip_touch_state, state);
+        return state;
+    }
+
     /**
      * Determines the touched location inside the TextView's text and returns the ClickableSpan found under it (if any).
      *
      * @return The touched ClickableSpan or null.
      */
     protected ChipSpan findClickableSpanUnderTouch(TextView textView, Spannable text, MotionEvent event) {
+        return findClickableSpanUnderTouch(textView, text, event.getX(), event.getY());
+    }
+
+    /**
+     * Returns the ChipSpan under the given view-local coordinates (if any).
+     */
+    protected ChipSpan findClickableSpanUnderTouch(TextView textView, Spannable text, float x, float y) {
         // So we need to find the location in text where touch was made, regardless of whether the TextView
         // has scrollable text. That is, not the entire text is currently visible.
-        int touchX = (int) event.getX();
-        int touchY = (int) event.getY();
+        int touchX = (int) x;
+        int touchY = (int) y;
 
         // Ignore padding.
         touchX -= textView.getTotalPaddingLeft();
@@ -163,33 +225,25 @@ public class ChipMovementMethod extends LinkMovementMethod {
         touchX += textView.getScrollX();
         touchY += textView.getScrollY();
 
-        final Layout layout = textView.getLayout();
-        final int touchedLine = layout.getLineForVertical(touchY);
-        final int touchOffset = layout.getOffsetForHorizontal(touchedLine, touchX);
-
-
-        // Find a ClickableSpan that lies under the touched area.
-        final Object[] spans = text.getSpans(touchOffset, touchOffset, ChipSpan.class);
-        if (spans.length > 0) {
-            return (ChipSpan) spans[0];
-        }
-        // No ClickableSpan found under the touched location.
-        return null;
-
+        // Binary search in the per-layout chip index instead of scanning the span table.
+        return ChipLayoutIndex.of(textView).findChipAt(touchX, touchY);
     }
 
     /**
      * Adds a background color span at <var>clickableSpan</var>'s location.
      */
     protected void highlightUrl(TextView textView, IChip clickableSpan, Spannable text) {
-        clickableSpan.setPressed(true);
         Object tag = textView.getTag(R.id.tag_movementmethod);
+        if (tag == clickableSpan && clickableSpan.isPressed()) {
+            // Still over the same chip, nothing to redraw.
+            return;
+        }
         if (tag != null && tag != clickableSpan) {
             removeUrlHighlightColor(textView);
         }
+        clickableSpan.setPressed(true);
         textView.setTag(R.id.tag_movementmethod, clickableSpan);
-        textView.postInvalidate();
-
+        invalidateChip(textView, clickableSpan);
     }
 
     /**
@@ -198,25 +252,60 @@ public class ChipMovementMethod extends LinkMovementMethod {
     protected void removeUrlHighlightColor(TextView textView) {
         Object tag = textView.getTag(R.id.tag_movementmethod);
         if (tag == null) {
+            // Nothing highlighted since the last removal.
             return;
         }
+        textView.setTag(R.id.tag_movementmethod, null);
         ((IChip) tag).setPressed(false);
-        textView.postInvalidate();
+        invalidateChip(textView, (IChip) tag);
     }
 
+    /**
+     * Invalidates only the pixel bounds of <var>chip</var>, falling back to the whole view if they are unknown.
+     */
+    protected void invalidateChip(TextView textView, IChip chip) {
+        if (!(chip instanceof ChipSpan)
+                || !ChipLayoutIndex.of(textView).invalidateChip(textView, (ChipSpan) chip, dirtyRect)) {
+            textView.postInvalidate();
+        }
+    }
+
+    void startTimerForRegisteringLongClick(TextView textView, IChip chip) {
+        removeLongPressCallback(textView);
+        LongPressTimer timer = touchStateOf(textView).longPressTimer;
+        timer.arm(textView, chip, null);
+        textView.postDelayed(timer, ViewConfiguration.getLongPressTimeout());
+    }
+
+    /**
+     * Posts the long-press timer with a custom callback.
+     *
+     * @deprecated ChipMovementMethod no longer calls this, long presses reuse one timer per TextView and
+     * end up in {@link #dispatchUrlLongClick(TextView, IChip)}. Override that instead.
+     */
+    @Deprecated
     protected void startTimerForRegisteringLongClick(TextView textView, LongPressTimer.OnTimerReachedListener longClickListener) {
-        ongoingLongPressTimer = new LongPressTimer();
-        ongoingLongPressTimer.setOnTimerReachedListener(longClickListener);
-        textView.postDelayed(ongoingLongPressTimer, ViewConfiguration.getLongPressTimeout());
+        removeLongPressCallback(textView);
+        LongPressTimer timer = touchStateOf(textView).longPressTimer;
+        timer.arm(textView, null, longClickListener);
+        textView.postDelayed(timer, ViewConfiguration.getLongPressTimeout());
+    }
+
+    private void onLongPressTimeout(TextView textView, IChip chip) {
+        touchStateOf(textView).wasLongPressRegistered = true;
+        textView.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+        removeUrlHighlightColor(textView);
+        dispatchUrlLongClick(textView, chip);
     }
 
     /**
      * Remove the long-press detection timer.
      */
     protected void removeLongPressCallback(TextView textView) {
-        if (ongoingLongPressTimer != null) {
-            textView.removeCallbacks(ongoingLongPressTimer);
-            ongoingLongPressTimer = null;
+        LongPressTimer timer = touchStateOf(textView).longPressTimer;
+        if (timer.isArmed()) {
+            textView.removeCallbacks(timer);
+            timer.disarm();
         }
     }
 
@@ -228,8 +317,25 @@ public class ChipMovementMethod extends LinkMovementMethod {
         return onLinkLongClickListener != null && onLinkLongClickListener.onLongClick(textView, clickableSpan);
     }
 
+    private static final class TouchState {
+        final ChipMovementMethod owner;
+        // Re-armed with the current target on every ACTION_DOWN.
+        final LongPressTimer longPressTimer = new LongPressTimer();
+        ChipSpan chipOnActionDown;
+        boolean wasLongPressRegistered;
+        int pointerId = MotionEvent.INVALID_POINTER_ID;
+
+        TouchState(ChipMovementMethod owner) {
+            this.owner = owner;
+            longPressTimer.owner = owner;
+        }
+    }
+
     protected static final class LongPressTimer implements Runnable {
         private OnTimerReachedListener onTimerReachedListener;
+        private ChipMovementMethod owner;
+        private TextView textView;
+        private IChip chip;
 
         protected interface OnTimerReachedListener {
             void onTimerReached();
@@ -237,11 +343,38 @@ public class ChipMovementMethod extends LinkMovementMethod {
 
         @Override
         public void run() {
-            onTimerReachedListener.onTimerReached();
+            TextView textView = this.textView;
+            IChip chip = this.chip;
+            OnTimerReachedListener listener = onTimerReachedListener;
+            disarm();
+            if (textView == null) {
+                return;
+            }
+            if (listener != null) {
+                listener.onTimerReached();
+            } else if (owner != null) {
+                owner.onLongPressTimeout(textView, chip);
+            }
         }
 
         public void setOnTimerReachedListener(OnTimerReachedListener listener) {
             onTimerReachedListener = listener;
         }
+
+        void arm(TextView textView, IChip chip, OnTimerReachedListener listener) {
+            this.textView = textView;
+            this.chip = chip;
+            this.onTimerReachedListener = listener;
+        }
+
+        void disarm() {
+            this.textView = null;
+            this.chip = null;
+            this.onTimerReachedListener = null;
+        }
+
+        boolean isArmed() {
+            return textView != null;
+        }
     }
 }
@@ -0,0 +1,200 @@
+package github.hotstu.chipspan;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.os.ConfigurationCompat;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc chip文本的紧凑快照，用于旋转和进程重建时保存/恢复
+ * 保存文本、每个chip的区间、id、文本、样式、间距、状态以及已经测量好的尺寸；恢复时一次构建全部span，
+ * 影响尺寸的configuration(旋转不算)和主题都不变时直接使用保存的尺寸，不再测量
+ * @since 10/17/26
+ */
+public final class ChipSnapshot implements Parcelable {
+    private static final int FLAG_ENABLED = 1;
+    private static final int FLAG_STATIC = 1 << 1;
+
+    private final String mText;
+    private final int[] mStarts;
+    private final int[] mEnds;
+    private final long[] mIds;
+    private final String[] mTexts;
+    private final int[] mResIds;
+    private final int[] mFlags;
+    private final int[] mSpaceHorizontal;
+    private final int[] mSpaceVertical;
+    /**
+     * 尚未测量过的chip为-1，恢复时重新测量
+     */
+    private final int[] mWidths;
+    private final int[] mHeights;
+    /**
+     * 保存时的configuration和主题的指纹，见{@link #fingerprint(Context)}
+     */
+    private final int mFingerprint;
+
+    private ChipSnapshot(String text, int count, int fingerprint) {
+        this.mText = text;
+        this.mStarts = new int[count];
+        this.mEnds = new int[count];
+        this.mIds = new long[count];
+        this.mTexts = new String[count];
+        this.mResIds = new int[count];
+        this.mFlags = new int[count];
+        this.mSpaceHorizontal = new int[count];
+        this.mSpaceVertical = new int[count];
+        this.mWidths = new int[count];
+        this.mHeights = new int[count];
+        this.mFingerprint = fingerprint;
+    }
+
+    @NonNull
+    public static ChipSnapshot of(@NonNull TextView textView) {
+        return of(textView.getContext(), textView.getText());
+    }
+
+    /**
+     * 只读取已经测量过的尺寸，不会为了保存而触发测量
+     */
+    @NonNull
+    public static ChipSnapshot of(@NonNull Context context, CharSequence text) {
+        int fingerprint = fingerprint(context);
+        if (!(text instanceof Spanned)) {
+            return new ChipSnapshot(text != null ? text.toString() : "", 0, fingerprint);
+        }
+        final Spanned spanned = (Spanned) text;
+        ChipSpan[] spans = spanned.getSpans(0, spanned.length(), ChipSpan.class);
+        Arrays.sort(spans, new Comparator<ChipSpan>() {
+            @Override
+            public int compare(ChipSpan o1, ChipSpan o2) {
+                return spanned.getSpanStart(o1) - spanned.getSpanStart(o2);
+            }
+        });
+        ChipSnapshot snapshot = new ChipSnapshot(spanned.toString(), spans.length, fingerprint);
+        for (int i = 0; i < spans.length; i++) {
+            ChipSpan span = spans[i];
+            snapshot.mStarts[i] = spanned.getSpanStart(span);
+            snapshot.mEnds[i] = spanned.getSpanEnd(span);
+            snapshot.mIds[i] = span.getId();
+            snapshot.mTexts[i] = span.getText();
+            snapshot.mResIds[i] = span.getResId();
+            snapshot.mFlags[i] = (span.isEnabled() ? FLAG_ENABLED : 0) | (span.isStatic() ? FLAG_STATIC : 0);
+            snapshot.mSpaceHorizontal[i] = span.getSpaceHorizontal();
+            snapshot.mSpaceVertical[i] = span.getSpaceVertical();
+            boolean sized = span.isSized();
+            snapshot.mWidths[i] = sized ? span.getMeasuredWidth() : -1;
+            snapshot.mHeights[i] = sized ? span.getMeasuredHeight() : -1;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 影响chip尺寸的输入：密度、字体缩放、夜间模式、语言(字体)以及主题。
+     * 方向和屏幕尺寸不影响chip的尺寸，旋转之后仍然复用保存的尺寸；
+     * API 24以下Theme#hashCode按实例计算，重建之后不会相等，相当于总是重新测量
+     */
+    private static int fingerprint(Context context) {
+        Configuration config = context.getResources().getConfiguration();
+        int h = config.densityDpi;
+        h = 31 * h + Float.floatToIntBits(config.fontScale);
+        h = 31 * h + config.uiMode;
+        h = 31 * h + ConfigurationCompat.getLocales(config).toLanguageTags().hashCode();
+        h = 31 * h + context.getTheme().hashCode();
+        return h;
+    }
+
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * 用快照重建TextView的文本，只调用一次setText；TextView原来是Editable时保持Editable
+     */
+    public void restore(@NonNull TextView textView) {
+        ChipTextTask.cancel(textView);
+        ChipListBinder.unbind(textView);
+        TextView.BufferType type = textView.getText() instanceof Editable
+                ? TextView.BufferType.EDITABLE : TextView.BufferType.SPANNABLE;
+        textView.setText(build(textView.getContext()), type);
+    }
+
+    @NonNull
+    public SpannableStringBuilder build(@NonNull Context context) {
+        boolean sizesValid = fingerprint(context) == mFingerprint;
+        SpannableStringBuilder sb = new SpannableStringBuilder(mText);
+        for (int i = 0; i < mIds.length; i++) {
+            ChipSpan span = new ChipSpan(context, mTexts[i], mResIds[i]);
+            //setId同时保证之后自动分配的id不会与恢复的id重复
+            span.setId(mIds[i]);
+            span.setEnabled((mFlags[i] & FLAG_ENABLED) != 0);
+            span.setStatic((mFlags[i] & FLAG_STATIC) != 0);
+            span.setSpaceHorizontal(mSpaceHorizontal[i]);
+            span.setSpaceVertical(mSpaceVertical[i]);
+            if (sizesValid && mWidths[i] >= 0) {
+                span.presize(mWidths[i], mHeights[i]);
+            }
+            sb.setSpan(span, mStarts[i], mEnds[i], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        return sb;
+    }
+
+    private ChipSnapshot(Parcel in) {
+        mText = in.readString();
+        mStarts = in.createIntArray();
+        mEnds = in.createIntArray();
+        mIds = in.createLongArray();
+        mTexts = in.createStringArray();
+        mResIds = in.createIntArray();
+        mFlags = in.createIntArray();
+        mSpaceHorizontal = in.createIntArray();
+        mSpaceVertical = in.createIntArray();
+        mWidths = in.createIntArray();
+        mHeights = in.createIntArray();
+        mFingerprint = in.readInt();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(mText);
+        dest.writeIntArray(mStarts);
+        dest.writeIntArray(mEnds);
+        dest.writeLongArray(mIds);
+        dest.writeStringArray(mTexts);
+        dest.writeIntArray(mResIds);
+        dest.writeIntArray(mFlags);
+        dest.writeIntArray(mSpaceHorizontal);
+        dest.writeIntArray(mSpaceVertical);
+        dest.writeIntArray(mWidths);
+        dest.writeIntArray(mHeights);
+        dest.writeInt(mFingerprint);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Creator<ChipSnapshot> CREATOR = new Creator<ChipSnapshot>() {
+        @Override
+        public ChipSnapshot createFromParcel(Parcel in) {
+            return new ChipSnapshot(in);
+        }
+
+        @Override
+        public ChipSnapshot[] newArray(int size) {
+            return new ChipSnapshot[size];
+        }
+    };
+}
@@ -5,10 +5,8 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.text.Layout;
-import android.text.Spannable;
+import android.text.TextUtils;
 import android.text.style.DynamicDrawableSpan;
-import android.util.Log;
 import android.widget.TextView;
 
 import androidx.annotation.IntRange;
@@ -16,7 +14,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.XmlRes;
 
-import com.google.android.material.chip.ChipDrawable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author hglf [hglf](https://github.com/hotstu)
@@ -26,52 +24,205 @@ import com.google.android.material.chip.ChipDrawable;
 public class ChipSpan extends DynamicDrawableSpan implements IChip{
     private final static int[] STATE_PRESSED = new int[]{android.R.attr.state_selected};
     private final static int[] STATE_ENABLED = new int[]{android.R.attr.state_enabled};
-    private final Context mContext;
-    private final String mText;
+    private final static AtomicLong sNextId = new AtomicLong();
+    /**
+     * chip之间默认的水平和垂直间距
+     */
+    final static int DEFAULT_SPACE = 20;
+    private long mId;
+    private Object mPayload;
+    private Context mContext;
+    private String mText;
     private Drawable mDrawable;
     private  int spaceHorizontal;
     private  int spaceVertical;
-    private final int resId;
+    private int resId;
     private boolean isPressed = false;
     private boolean isEnabled = true;
+    private int mWidth;
+    private int mHeight;
+    private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+    private boolean isStatic = false;
+    private ChipAtlas.Region mAtlasNormal;
+    private ChipAtlas.Region mAtlasPressed;
+    private final Rect mBounds = new Rect();
+    private boolean mSized = false;
 
     public ChipSpan(Context context, String text) {
         this(context, text, R.xml.standalone_chip_action);
     }
 
     public ChipSpan(Context context, String text, @XmlRes int resId) {
+        this(context, text, resId, ALIGN_BOTTOM);
+    }
+
+    /**
+     * @param verticalAlignment {@link #ALIGN_BOTTOM}、{@link #ALIGN_BASELINE}或{@link #ALIGN_CENTER}
+     */
+    public ChipSpan(Context context, String text, @XmlRes int resId, int verticalAlignment) {
+        super(verticalAlignment);
         this.mText = text;
         this.mContext = context;
-        this.spaceHorizontal = 20;
-        this.spaceVertical = 20;
+        this.spaceHorizontal = DEFAULT_SPACE;
+        this.spaceVertical = DEFAULT_SPACE;
         this.resId = resId;
+        this.mId = sNextId.incrementAndGet();
     }
 
     public String getText() {
         return mText;
     }
 
+    /**
+     * 默认是进程内自增的id
+     */
+    @Override
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * 使用业务自己的id(例如联系人id)，必须在span加入文本之前设置，否则{@link ChipIdIndex}查不到
+     * 之后自动分配的id从它之后开始，不会与它重复
+     */
+    public void setId(long id) {
+        this.mId = id;
+        reserveId(id);
+    }
+
+    /**
+     * 保证之后自动分配的id都大于id
+     */
+    static void reserveId(long id) {
+        long next;
+        while ((next = sNextId.get()) < id && !sNextId.compareAndSet(next, id)) {
+            //被其他线程更新了，重试
+        }
+    }
+
+    @Nullable
+    @Override
+    public Object getPayload() {
+        return mPayload;
+    }
+
+    public void setPayload(@Nullable Object payload) {
+        this.mPayload = payload;
+    }
+
+    @XmlRes
+    public int getResId() {
+        return resId;
+    }
+
+    /**
+     * 供{@link ChipSpanPool}复用：文本和样式不变时保留已经准备好的drawable和尺寸
+     */
+    void reset(Context context, String text, @XmlRes int resId) {
+        if (context != mContext || resId != this.resId || !TextUtils.equals(text, mText)) {
+            this.mContext = context;
+            this.mText = text;
+            this.resId = resId;
+            releaseDrawable();
+            mSized = false;
+        }
+        this.spaceHorizontal = DEFAULT_SPACE;
+        this.spaceVertical = DEFAULT_SPACE;
+        this.isPressed = false;
+        this.isEnabled = true;
+        this.isStatic = false;
+        this.mId = sNextId.incrementAndGet();
+        this.mPayload = null;
+    }
+
     @Override
     public Drawable getDrawable() {
         if (mDrawable != null) {
             return mDrawable;
         }
-        ChipDrawable chip = ChipDrawable.createFromResource(mContext, resId);
-        chip.setText(mText);
-        chip.setBounds(0, 0, chip.getIntrinsicWidth(), chip.getIntrinsicHeight());
-        mDrawable = chip;
+        mDrawable = ChipDrawableCache.get(mContext).obtain(mContext, mText, resId);
+        //缓存的drawable的bounds不会再变化，measure和draw直接使用这里的值
+        setBounds(mDrawable.getBounds());
         refreshDrawableState();
         return mDrawable;
     }
 
+    /**
+     * measure只需要尺寸，不创建drawable：尺寸来自{@link ChipDrawableCache}的尺寸缓存，未命中时用同一样式的模板drawable测量，与真实drawable一致
+     */
+    private void ensureSize() {
+        if (mSized) {
+            return;
+        }
+        if (mDrawable != null) {
+            setBounds(mDrawable.getBounds());
+        } else {
+            ChipDrawableCache.get(mContext).measure(mContext, mText, resId, mBounds);
+            setBounds(mBounds);
+        }
+    }
+
+    /**
+     * 使用已知的尺寸(例如{@link ChipSnapshot}中保存的)，跳过测量
+     */
+    void presize(int width, int height) {
+        mBounds.set(0, 0, width, height);
+        setBounds(mBounds);
+    }
+
+    int getMeasuredWidth() {
+        ensureSize();
+        return mWidth;
+    }
+
+    int getMeasuredHeight() {
+        ensureSize();
+        return mHeight;
+    }
+
+    private void setBounds(Rect bounds) {
+        mBounds.set(0, 0, bounds.width(), bounds.height());
+        mWidth = mBounds.right;
+        mHeight = mBounds.bottom;
+        mSized = true;
+    }
+
+    /**
+     * 释放drawable(以及图集区域)的引用，尺寸保留，下次draw时重新获取；用于滚出可见区域的chip
+     */
+    void releaseDrawable() {
+        mDrawable = null;
+        mAtlasNormal = null;
+        mAtlasPressed = null;
+    }
+
+    boolean isDrawableHeld() {
+        return mDrawable != null;
+    }
+
+    /**
+     * @return 尺寸是否已知，为false时{@link #getMeasuredWidth()}会触发测量
+     */
+    boolean isSized() {
+        return mSized;
+    }
+
     public void setSpaceVertical(int spaceVertical) {
         this.spaceVertical = spaceVertical;
     }
 
+    public int getSpaceVertical() {
+        return spaceVertical;
+    }
+
     public void setSpaceHorizontal(int spaceHorizontal) {
         this.spaceHorizontal = spaceHorizontal;
     }
 
+    public int getSpaceHorizontal() {
+        return spaceHorizontal;
+    }
+
     public void setPressed(boolean isPressed) {
         this.isPressed = isPressed;
         refreshDrawableState();
@@ -82,6 +233,18 @@ public class ChipSpan extends DynamicDrawableSpan implements IChip{
         refreshDrawableState();
     }
 
+    /**
+     * 静态模式下chip的外观被光栅化到共享的{@link ChipAtlas}中，draw只做一次drawBitmap，
+     * 适合只读的chip列表
+     */
+    public void setStatic(boolean isStatic) {
+        this.isStatic = isStatic;
+    }
+
+    public boolean isStatic() {
+        return isStatic;
+    }
+
     public boolean isEnabled() {
         return isEnabled;
     }
@@ -97,7 +260,7 @@ public class ChipSpan extends DynamicDrawableSpan implements IChip{
         if (isPressed) {
             mDrawable.setState(STATE_PRESSED);
         } else {
-            mDrawable.setState(new int[]{android.R.attr.state_enabled});
+            mDrawable.setState(STATE_ENABLED);
         }
     }
 
@@ -106,93 +269,82 @@ public class ChipSpan extends DynamicDrawableSpan implements IChip{
     public int getSize(@NonNull Paint paint, CharSequence text,
                        @IntRange(from = 0) int start, @IntRange(from = 0) int end,
                        @Nullable Paint.FontMetricsInt fm) {
-        Drawable d = getDrawable();
-        Rect rect = d.getBounds();
+        ensureSize();
 
         if (fm != null) {
-            fm.ascent = -(rect.bottom + spaceVertical);
+            fm.ascent = -(mHeight + spaceVertical);
             fm.descent = 0;
 
             fm.top = fm.ascent;
             fm.bottom = 0;
         }
 
-        return rect.right + spaceHorizontal;
+        return mWidth + spaceHorizontal;
     }
 
     @Override
     public void draw(@NonNull Canvas canvas, CharSequence text,
                      @IntRange(from = 0) int start, @IntRange(from = 0) int end, float x,
                      int top, int y, int bottom, @NonNull Paint paint) {
+        long drawStart = ChipMetrics.begin("ChipSpan:draw");
         Drawable b = getDrawable();
         canvas.save();
 
-        int transY = (int) (bottom - b.getBounds().bottom - spaceVertical * .5f);
+        int transY = (int) (bottom - mHeight - spaceVertical * .5f);
         if (mVerticalAlignment == ALIGN_BASELINE) {
-            transY -= paint.getFontMetricsInt().descent;
+            paint.getFontMetricsInt(mFontMetrics);
+            transY -= mFontMetrics.descent;
         } else if (mVerticalAlignment == ALIGN_CENTER) {
-            transY = (bottom - top) / 2 - b.getBounds().height() / 2;
+            transY = (bottom - top) / 2 - mHeight / 2;
         }
 
         canvas.translate(x + (spaceHorizontal * .5f), transY);
-        b.draw(canvas);
+        if (!isStatic || !drawFromAtlas(canvas)) {
+            //drawable在相同的chip之间共享，draw之前恢复自己的state
+            refreshDrawableState();
+            b.draw(canvas);
+        }
         canvas.restore();
+        long elapsed = ChipMetrics.end(drawStart);
+        if (drawStart != 0) {
+            ChipMetrics.getListener().onChipDrawn(elapsed);
+        }
     }
 
-    public void getLocationOnScreen(TextView widget) {
-
-        TextView parentTextView = (TextView) widget;
-
-        Rect parentTextViewRect = new Rect();
-
-        // Initialize values for the computing of clickedText position
-        Spannable completeText = (Spannable)(parentTextView).getText();
-        Layout textViewLayout = parentTextView.getLayout();
-
-        int startOffsetOfClickedText = completeText.getSpanStart(this);
-        int endOffsetOfClickedText = completeText.getSpanEnd(this);
-        float startXCoordinatesOfClickedText = textViewLayout.getPrimaryHorizontal((int)startOffsetOfClickedText);
-        float endXCoordinatesOfClickedText = textViewLayout.getPrimaryHorizontal((int)endOffsetOfClickedText);
-
-
-        // Get the rectangle of the clicked text
-        int currentLineStartOffset = textViewLayout.getLineForOffset((int)startOffsetOfClickedText);
-        int currentLineEndOffset = textViewLayout.getLineForOffset((int)endOffsetOfClickedText);
-        boolean keywordIsInMultiLine = currentLineStartOffset != currentLineEndOffset;
-        textViewLayout.getLineBounds(currentLineStartOffset, parentTextViewRect);
-
-
-        // Update the rectangle position to his real position on screen
-        int[] parentTextViewLocation = {0,0};
-        parentTextView.getLocationOnScreen(parentTextViewLocation);
-
-        float parentTextViewTopAndBottomOffset = (
-                parentTextViewLocation[1] -
-                        parentTextView.getScrollY() +
-                        parentTextView.getCompoundPaddingTop()
-        );
-        parentTextViewRect.top += parentTextViewTopAndBottomOffset;
-        parentTextViewRect.bottom += parentTextViewTopAndBottomOffset;
-
-        parentTextViewRect.left += (
-                parentTextViewLocation[0] +
-                        startXCoordinatesOfClickedText +
-                        parentTextView.getCompoundPaddingLeft() -
-                        parentTextView.getScrollX()
-        );
-        parentTextViewRect.right = (int) (
-                parentTextViewRect.left +
-                        endXCoordinatesOfClickedText -
-                        startXCoordinatesOfClickedText
-        );
-
-        int x = (parentTextViewRect.left + parentTextViewRect.right) / 2;
-        int y = parentTextViewRect.bottom;
-        if (keywordIsInMultiLine) {
-            x = parentTextViewRect.left;
+    private boolean drawFromAtlas(Canvas canvas) {
+        ChipAtlas atlas = ChipAtlas.get(mContext);
+        ChipAtlas.Region region = isPressed ? mAtlasPressed : mAtlasNormal;
+        if (region == null || !region.isValid()) {
+            region = atlas.obtain(mDrawable, isPressed ? 1 : 0, isPressed ? STATE_PRESSED : STATE_ENABLED);
+            if (region == null) {
+                return false;
+            }
+            if (isPressed) {
+                mAtlasPressed = region;
+            } else {
+                mAtlasNormal = region;
+            }
         }
+        return atlas.draw(canvas, region, mBounds);
+    }
+
+    /**
+     * 把chip在widget中的区域(View坐标，计入padding，不减滚动，与onDraw的canvas一致)写入out，可以在onDraw、滚动等高频路径中调用
+     * 区域来自{@link ChipLayoutIndex}，每次layout对全部chip计算一次，之后的查询是O(1)且不分配内存
+     *
+     * @return chip不在widget的文本中时返回false
+     */
+    public boolean getBounds(@NonNull TextView widget, @NonNull Rect out) {
+        return ChipLayoutIndex.of(widget).getChipBoundsInView(widget, this, out);
+    }
 
-        Log.d("location2",   x + "," + y);
+    /**
+     * 把chip在屏幕上的区域写入out，用于锚定popup、tooltip
+     *
+     * @return chip不在widget的文本中时返回false
+     */
+    public boolean getBoundsOnScreen(@NonNull TextView widget, @NonNull Rect out) {
+        return ChipLayoutIndex.of(widget).getChipBoundsOnScreen(widget, this, out);
     }
 
 }
@@ -1,14 +1,14 @@
 package github.hotstu.chipspan;
 
+import android.content.Context;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
-import android.text.style.ClickableSpan;
-import android.view.View;
 import android.widget.TextView;
 
-import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.XmlRes;
 import androidx.databinding.BindingAdapter;
+import androidx.databinding.ObservableList;
 
 import java.util.List;
 
@@ -26,23 +26,145 @@ public class ChipSpanBindings {
 
     @BindingAdapter(value = {"bind:chipText", "bind:chipRes"}, requireAll = true)
     public static void bindChipText(TextView v, List<String> texts, @XmlRes int res) {
+        bindChipText(v, texts, res, false);
+    }
+
+    /**
+     * @param isStatic 只读的chip使用图集渲染，见{@link ChipSpan#setStatic(boolean)}
+     */
+    @BindingAdapter(value = {"bind:chipText", "bind:chipRes", "bind:chipStatic"}, requireAll = true)
+    public static void bindChipText(TextView v, List<String> texts, @XmlRes int res, boolean isStatic) {
+        ChipTextTask.cancel(v);
+        ChipListBinder.unbind(v);
+        if (texts == null || texts.size() == 0) {
+            v.setText(null);
+            return;
+        }
+        v.setText(buildChips(v.getContext(), texts, res, isStatic, null), TextView.BufferType.SPANNABLE);
+    }
+
+    /**
+     * 从pool中取span，TextView中原有的span先放回pool，适合RecyclerView中反复绑定的行
+     */
+    @BindingAdapter(value = {"bind:chipText", "bind:chipRes", "bind:chipPool"}, requireAll = true)
+    public static void bindChipText(TextView v, List<String> texts, @XmlRes int res, ChipSpanPool pool) {
+        ChipTextTask.cancel(v);
+        ChipListBinder.unbind(v);
+        if (pool != null) {
+            //旧文本紧接着就被替换，其中的span可以直接用于这次构建
+            pool.releaseAll(v.getText());
+        }
+        if (texts == null || texts.size() == 0) {
+            v.setText(null);
+            return;
+        }
+        v.setText(buildChips(v.getContext(), texts, res, false, pool), TextView.BufferType.SPANNABLE);
+    }
+
+    /**
+     * 异步绑定：在后台线程创建span、测量chip并用PrecomputedTextCompat预计算文本，完成后再设置到TextView，
+     * 新的绑定会取消尚未完成的旧任务
+     */
+    @BindingAdapter("bind:chipTextAsync")
+    public static void bindChipTextAsync(TextView v, List<String> texts) {
+        bindChipTextAsync(v, texts, R.xml.standalone_chip_action);
+    }
+
+    @BindingAdapter(value = {"bind:chipTextAsync", "bind:chipRes"}, requireAll = true)
+    public static void bindChipTextAsync(TextView v, List<String> texts, @XmlRes int res) {
+        ChipTextTask.cancel(v);
+        ChipListBinder.unbind(v);
         if (texts == null || texts.size() == 0) {
             v.setText(null);
             return;
         }
+        ChipTextTask.submit(v, texts, res);
+    }
+
+    /**
+     * 增量绑定：只在列表发生区间变化的位置增删chip，未变化的ChipSpan及其drawable会被复用
+     */
+    @BindingAdapter("bind:chipList")
+    public static void bindChipList(TextView v, ObservableList<String> texts) {
+        bindChipList(v, texts, R.xml.standalone_chip_action);
+    }
+
+    @BindingAdapter(value = {"bind:chipList", "bind:chipRes"}, requireAll = true)
+    public static void bindChipList(TextView v, ObservableList<String> texts, @XmlRes int res) {
+        ChipListBinder.bind(v, texts, res);
+    }
+
+    /**
+     * 虚拟化：只有可见行上的chip持有drawable，滚出可见区域后释放。
+     * ChipSpan在measure时只从尺寸缓存取尺寸，所在行第一次被draw时才创建drawable，
+     * 与bind:chipText一起使用就是长chip字段的懒加载，行变为可见时不需要替换span，也不会触发重新排版
+     */
+    @BindingAdapter("bind:chipVirtualized")
+    public static void bindChipVirtualized(TextView v, boolean virtualized) {
+        if (virtualized) {
+            ChipViewport.attach(v);
+        } else {
+            ChipViewport.detach(v);
+        }
+    }
+
+    /**
+     * 把chip暴露给无障碍服务；触摸浏览和方向键导航还需要宿主转发事件，见{@link ChipAccessibilityHelper}和{@link ChipTextView}
+     */
+    @BindingAdapter("bind:chipAccessible")
+    public static void bindChipAccessible(TextView v, boolean accessible) {
+        if (accessible) {
+            ChipAccessibilityHelper.attach(v);
+        } else {
+            ChipAccessibilityHelper.detach(v);
+        }
+    }
+
+    /**
+     * 输入或粘贴的分隔符分隔的文本逐帧转换为chip，见{@link ChipTokenizer}
+     */
+    @BindingAdapter("bind:chipTokenizer")
+    public static void bindChipTokenizer(TextView v, boolean tokenize) {
+        if (tokenize) {
+            ChipTokenizer.attach(v);
+        } else {
+            ChipTokenizer.detach(v);
+        }
+    }
+
+    /**
+     * @return TextView中id对应的chip，通过{@link ChipIdIndex}哈希查找
+     */
+    @Nullable
+    public static ChipSpan findChip(TextView v, long id) {
+        return ChipIdIndex.of(v).find(id);
+    }
+
+    /**
+     * @return bind:chipList绑定的TextView中chip对应的列表位置，文本重复时也是准确的；不存在时返回-1
+     */
+    public static int positionOf(TextView v, IChip chip) {
+        return ChipListBinder.positionOf(v, chip);
+    }
+
+    static SpannableStringBuilder buildChips(Context context, List<String> texts, @XmlRes int res,
+                                             boolean isStatic, @Nullable ChipSpanPool pool) {
+        long start = ChipMetrics.begin("ChipSpan:bind");
         SpannableStringBuilder sb = new SpannableStringBuilder();
         for (String text : texts) {
-            sb.append(text).append(" ");
-            sb.setSpan(new ChipSpan(v.getContext(), text, res), sb.length() - (text.length() + 1), sb.length() - 1,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            sb.setSpan(new ClickableSpan() {
-                           @Override
-                           public void onClick(@NonNull View widget) {
-
-                           }
-                       }, sb.length() - (text.length() + 1), sb.length() - 1,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-        }
-        v.setText(sb, TextView.BufferType.SPANNABLE);
+            ChipSpan span = pool != null ? pool.acquire(context, text, res) : new ChipSpan(context, text, res);
+            span.setStatic(isStatic);
+            appendChip(sb, span);
+        }
+        ChipMetrics.getListener().onBind(texts.size(), ChipMetrics.end(start));
+        return sb;
+    }
+
+    static void appendChip(SpannableStringBuilder sb, ChipSpan span) {
+        String text = span.getText();
+        sb.append(text).append(" ");
+        //ChipMovementMethod直接查找ChipSpan，不再需要额外的ClickableSpan
+        sb.setSpan(span, sb.length() - (text.length() + 1), sb.length() - 1,
+                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
     }
 }
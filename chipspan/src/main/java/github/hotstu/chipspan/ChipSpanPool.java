@@ -0,0 +1,92 @@
+package github.hotstu.chipspan;
+
+import android.content.Context;
+import android.text.Spanned;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.XmlRes;
+
+import java.util.ArrayList;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc ChipSpan回收池，RecyclerView的各行共用一个，重新绑定时复用span对象及其drawable
+ * 只能在主线程使用
+ * @since 10/17/26
+ */
+public class ChipSpanPool {
+    public static final int DEFAULT_MAX_SIZE = 256;
+    private final ArrayList<ChipSpan> mPool = new ArrayList<>();
+    private final int mMaxSize;
+
+    public ChipSpanPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ChipSpanPool(int maxSize) {
+        this.mMaxSize = maxSize;
+    }
+
+    /**
+     * 优先取出文本和样式都相同的span，这样连drawable和尺寸也不需要重新准备
+     */
+    @NonNull
+    public ChipSpan acquire(Context context, String text, @XmlRes int resId) {
+        int n = mPool.size();
+        if (n == 0) {
+            return new ChipSpan(context, text, resId);
+        }
+        int index = n - 1;
+        for (int i = n - 1; i >= 0; i--) {
+            ChipSpan span = mPool.get(i);
+            if (span.getResId() == resId && span.getText().equals(text)) {
+                index = i;
+                break;
+            }
+        }
+        //与末尾交换后移除，避免数组搬移
+        ChipSpan span = mPool.get(index);
+        mPool.set(index, mPool.get(n - 1));
+        mPool.remove(n - 1);
+        span.reset(context, text, resId);
+        return span;
+    }
+
+    public void release(@NonNull ChipSpan span) {
+        if (mPool.size() < mMaxSize) {
+            mPool.add(span);
+        }
+    }
+
+    /**
+     * 把text中的ChipSpan全部放回池中，调用之后text不能再被显示
+     */
+    public void releaseAll(@Nullable CharSequence text) {
+        if (!(text instanceof Spanned)) {
+            return;
+        }
+        ChipSpan[] spans = ((Spanned) text).getSpans(0, text.length(), ChipSpan.class);
+        for (ChipSpan span : spans) {
+            release(span);
+        }
+    }
+
+    /**
+     * 回收TextView中的chip，通常在RecyclerView.Adapter#onViewRecycled中调用
+     */
+    public void recycle(@NonNull TextView v) {
+        CharSequence text = v.getText();
+        v.setText(null);
+        releaseAll(text);
+    }
+
+    public int size() {
+        return mPool.size();
+    }
+
+    public void clear() {
+        mPool.clear();
+    }
+}
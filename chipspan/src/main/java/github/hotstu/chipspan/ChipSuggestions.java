@@ -0,0 +1,489 @@
+package github.hotstu.chipspan;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.Selection;
+import android.text.SpannableStringBuilder;
+import android.text.TextWatcher;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.XmlRes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc chip输入框的自动补全
+ * 候选词在后台线程建成有序索引(候选词中每个单词的开头都可以匹配)，查询是二分查找加按预先算好的名次取前limit个；
+ * 输入经过防抖后在后台查询，结果排除输入框中已有的chip，回到主线程回调
+ * @since 10/17/26
+ */
+public class ChipSuggestions implements TextWatcher {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 150;
+    public static final int DEFAULT_LIMIT = 8;
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final Executor EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "chipspan-suggest");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public interface Listener {
+        /**
+         * 在主线程回调，prefix为空或没有匹配时suggestions为空
+         */
+        void onSuggestions(@NonNull ChipSuggestions source, @NonNull String prefix, @NonNull List<String> suggestions);
+    }
+
+    private final TextView mTextView;
+    private final int mRes;
+    private final Listener mListener;
+    private volatile Index mIndex = Index.EMPTY;
+    private String mDelimiters = ChipTokenizer.DEFAULT_DELIMITERS;
+    private long mDebounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private int mLimit = DEFAULT_LIMIT;
+    /**
+     * 每次查询加一，后台返回时不是最新的查询结果直接丢弃
+     */
+    private int mGeneration;
+    private final Runnable mQuery = new Runnable() {
+        @Override
+        public void run() {
+            query();
+        }
+    };
+
+    private ChipSuggestions(TextView textView, @XmlRes int res, Listener listener) {
+        this.mTextView = textView;
+        this.mRes = res;
+        this.mListener = listener;
+    }
+
+    @NonNull
+    public static ChipSuggestions attach(@NonNull TextView textView, @NonNull Listener listener) {
+        return attach(textView, R.xml.standalone_chip_action, listener);
+    }
+
+    /**
+     * @param res 接受建议时插入的chip使用的样式
+     */
+    @NonNull
+    public static ChipSuggestions attach(@NonNull TextView textView, @XmlRes int res, @NonNull Listener listener) {
+        if (!(textView.getText() instanceof Editable)) {
+            textView.setText(textView.getText(), TextView.BufferType.EDITABLE);
+        }
+        ChipSuggestions suggestions = new ChipSuggestions(textView, res, listener);
+        textView.addTextChangedListener(suggestions);
+        return suggestions;
+    }
+
+    public void detach() {
+        mTextView.removeTextChangedListener(this);
+        MAIN.removeCallbacks(mQuery);
+        mGeneration++;
+    }
+
+    /**
+     * 在后台线程建立索引，完成之前的查询使用旧的索引
+     */
+    public ChipSuggestions setCandidates(@NonNull Collection<String> candidates) {
+        final List<String> copy = new ArrayList<>(candidates);
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                mIndex = Index.build(copy);
+            }
+        });
+        return this;
+    }
+
+    public ChipSuggestions setDelimiters(@NonNull String delimiters) {
+        this.mDelimiters = delimiters;
+        return this;
+    }
+
+    public ChipSuggestions setDebounce(long millis) {
+        this.mDebounceMillis = millis;
+        return this;
+    }
+
+    public ChipSuggestions setLimit(int limit) {
+        this.mLimit = limit;
+        return this;
+    }
+
+    /**
+     * 用chip替换正在输入的文本
+     */
+    public void accept(@NonNull String suggestion) {
+        if (!(mTextView.getText() instanceof Editable)) {
+            return;
+        }
+        Editable text = (Editable) mTextView.getText();
+        int end = cursor(text);
+        int start = tokenStart(text, end);
+        SpannableStringBuilder sb = new SpannableStringBuilder();
+        ChipSpanBindings.appendChip(sb, new ChipSpan(mTextView.getContext(), suggestion, mRes));
+        MAIN.removeCallbacks(mQuery);
+        mGeneration++;
+        text.replace(start, end, sb);
+        mListener.onSuggestions(this, "", Collections.<String>emptyList());
+    }
+
+    private static int cursor(CharSequence text) {
+        int cursor = Selection.getSelectionEnd(text);
+        return cursor >= 0 ? cursor : text.length();
+    }
+
+    /**
+     * @return 光标前正在输入的token的起点：上一个分隔符或上一个chip之后，不含开头的空白
+     * 向前扫描遇到chip就停止，开销只和正在输入的token长度有关
+     */
+    private int tokenStart(Editable text, int end) {
+        int start = end;
+        while (start > 0 && mDelimiters.indexOf(text.charAt(start - 1)) < 0
+                && text.getSpans(start - 1, start, ChipSpan.class).length == 0) {
+            start--;
+        }
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private void query() {
+        if (!(mTextView.getText() instanceof Editable)) {
+            return;
+        }
+        Editable text = (Editable) mTextView.getText();
+        int end = cursor(text);
+        final String prefix = text.subSequence(tokenStart(text, end), end).toString().trim();
+        final int generation = ++mGeneration;
+        if (prefix.isEmpty()) {
+            mListener.onSuggestions(this, prefix, Collections.<String>emptyList());
+            return;
+        }
+        final Set<String> existing = new HashSet<>();
+        for (ChipSpan chip : text.getSpans(0, text.length(), ChipSpan.class)) {
+            existing.add(chip.getText());
+        }
+        final Index index = mIndex;
+        final int limit = mLimit;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> result = index.query(prefix, existing, limit);
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            mListener.onSuggestions(ChipSuggestions.this, prefix, result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        MAIN.removeCallbacks(mQuery);
+        MAIN.postDelayed(mQuery, mDebounceMillis);
+    }
+
+    /**
+     * 不可变的有序索引：候选词(去重后)中每个单词的开头是一条key，key只记录(候选词下标, 偏移)，不拷贝子串；
+     * key按不区分大小写的字典序排序，比较时逐字符转小写。
+     * 排序规则与prefix无关：偏移为0的key(整个候选词以prefix开头)优先，其次候选词较短的，再按字母序，
+     * 所以每条key的名次在建索引时就能算好，查询只需要在prefix命中的key区间里按名次取前limit个不同的候选词
+     */
+    public static final class Index {
+        static final Index EMPTY = build(Collections.<String>emptyList());
+
+        private final String[] mValues;
+        /**
+         * 第i条key是mValues[mOwners[i]]从mOffsets[i]开始的后缀
+         */
+        private final int[] mOwners;
+        private final int[] mOffsets;
+        /**
+         * 第i条key的名次，越小越靠前
+         */
+        private final int[] mRanks;
+        /**
+         * 按名次求区间最小值的线段树，叶子在[n, 2n)，节点存名次最小的key的下标
+         */
+        private final int[] mTree;
+
+        private Index(String[] values, int[] owners, int[] offsets, int[] ranks) {
+            this.mValues = values;
+            this.mOwners = owners;
+            this.mOffsets = offsets;
+            this.mRanks = ranks;
+            int n = owners.length;
+            this.mTree = new int[2 * n];
+            for (int i = 0; i < n; i++) {
+                mTree[n + i] = i;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                mTree[i] = min(mTree[2 * i], mTree[2 * i + 1]);
+            }
+        }
+
+        @NonNull
+        public static Index build(@NonNull List<String> candidates) {
+            //相同的候选词只保留一个，否则会占满结果
+            final String[] values = new LinkedHashSet<>(candidates).toArray(new String[0]);
+            int count = 0;
+            for (String value : values) {
+                count += wordCount(value);
+            }
+            final int[] owners = new int[count];
+            final int[] offsets = new int[count];
+            int k = 0;
+            for (int i = 0; i < values.length; i++) {
+                String value = values[i];
+                for (int j = 0; j < value.length(); j++) {
+                    if (isWordStart(value, j)) {
+                        owners[k] = i;
+                        offsets[k] = j;
+                        k++;
+                    }
+                }
+            }
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return compareSuffix(values[owners[o1]], offsets[o1], values[owners[o2]], offsets[o2]);
+                }
+            });
+            int[] valueRanks = valueRanks(values);
+            int[] sortedOwners = new int[count];
+            int[] sortedOffsets = new int[count];
+            int[] ranks = new int[count];
+            for (int i = 0; i < count; i++) {
+                sortedOwners[i] = owners[order[i]];
+                sortedOffsets[i] = offsets[order[i]];
+                ranks[i] = (sortedOffsets[i] == 0 ? 0 : values.length) + valueRanks[sortedOwners[i]];
+            }
+            return new Index(values, sortedOwners, sortedOffsets, ranks);
+        }
+
+        /**
+         * @return 每个候选词按长度、再按字母序排列后的名次
+         */
+        private static int[] valueRanks(final String[] values) {
+            Integer[] order = new Integer[values.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    String a = values[o1];
+                    String b = values[o2];
+                    return a.length() != b.length() ? a.length() - b.length() : a.compareTo(b);
+                }
+            });
+            int[] ranks = new int[values.length];
+            for (int i = 0; i < order.length; i++) {
+                ranks[order[i]] = i;
+            }
+            return ranks;
+        }
+
+        private static boolean isWordStart(String value, int i) {
+            return !Character.isWhitespace(value.charAt(i)) && (i == 0 || Character.isWhitespace(value.charAt(i - 1)));
+        }
+
+        private static int wordCount(String value) {
+            int count = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (isWordStart(value, i)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static int compareSuffix(String a, int aFrom, String b, int bFrom) {
+            int n = Math.min(a.length() - aFrom, b.length() - bFrom);
+            for (int i = 0; i < n; i++) {
+                char ca = Character.toLowerCase(a.charAt(aFrom + i));
+                char cb = Character.toLowerCase(b.charAt(bFrom + i));
+                if (ca != cb) {
+                    return ca - cb;
+                }
+            }
+            return (a.length() - aFrom) - (b.length() - bFrom);
+        }
+
+        /**
+         * @return 第i条key截断到key的长度后与key比较，0表示以key开头
+         */
+        private int compareKey(int i, String key) {
+            String value = mValues[mOwners[i]];
+            int from = mOffsets[i];
+            int n = Math.min(value.length() - from, key.length());
+            for (int j = 0; j < n; j++) {
+                char c = Character.toLowerCase(value.charAt(from + j));
+                char k = key.charAt(j);
+                if (c != k) {
+                    return c - k;
+                }
+            }
+            return n == key.length() ? 0 : -1;
+        }
+
+        private static String lower(String prefix) {
+            char[] chars = new char[prefix.length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = Character.toLowerCase(prefix.charAt(i));
+            }
+            return new String(chars);
+        }
+
+        /**
+         * @return 第一条与key比较结果大于等于(upper为true时大于)0的key的下标
+         */
+        private int search(String key, boolean upper) {
+            int lo = 0;
+            int hi = mOwners.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = compareKey(mid, key);
+                if (c < 0 || (upper && c == 0)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private int min(int a, int b) {
+            return mRanks[b] < mRanks[a] ? b : a;
+        }
+
+        /**
+         * @return [from, to)中名次最小的key的下标，区间不能为空
+         */
+        private int minInRange(int from, int to) {
+            int n = mOwners.length;
+            int best = from;
+            for (int l = from + n, r = to + n; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) {
+                    best = min(best, mTree[l++]);
+                }
+                if ((r & 1) == 1) {
+                    best = min(best, mTree[--r]);
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 排序规则：整个候选词以prefix开头的优先，其次较短的，再按字母序。
+         * 在命中的key区间里按名次逐个取出最靠前的key，取满limit个不同的候选词就停止，
+         * 开销与limit(加上被排除的候选词)有关，与命中的数量无关
+         */
+        @NonNull
+        public List<String> query(@NonNull String prefix, @NonNull Set<String> excluded, int limit) {
+            //与建索引时一样逐字符转小写，不能用String#toLowerCase(长度可能变化)
+            String key = lower(prefix);
+            int from = search(key, false);
+            int to = search(key, true);
+            if (from >= to || limit <= 0) {
+                return new ArrayList<>(0);
+            }
+            List<String> result = new ArrayList<>(Math.min(limit, to - from));
+            //还没有取过的子区间，以及各自名次最小的key
+            int[] starts = new int[2 * limit + 2];
+            int[] ends = new int[starts.length];
+            int[] mins = new int[starts.length];
+            int open = 0;
+            starts[0] = from;
+            ends[0] = to;
+            mins[0] = minInRange(from, to);
+            open++;
+            int[] owners = new int[limit];
+            int count = 0;
+            while (count < limit && open > 0) {
+                int pick = 0;
+                for (int j = 1; j < open; j++) {
+                    if (mRanks[mins[j]] < mRanks[mins[pick]]) {
+                        pick = j;
+                    }
+                }
+                int start = starts[pick];
+                int end = ends[pick];
+                int i = mins[pick];
+                open--;
+                starts[pick] = starts[open];
+                ends[pick] = ends[open];
+                mins[pick] = mins[open];
+
+                int owner = mOwners[i];
+                if (!contains(owners, count, owner) && !excluded.contains(mValues[owner])) {
+                    owners[count++] = owner;
+                    result.add(mValues[owner]);
+                }
+                if (open + 2 > starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                    ends = Arrays.copyOf(ends, starts.length);
+                    mins = Arrays.copyOf(mins, starts.length);
+                }
+                if (start < i) {
+                    starts[open] = start;
+                    ends[open] = i;
+                    mins[open] = minInRange(start, i);
+                    open++;
+                }
+                if (i + 1 < end) {
+                    starts[open] = i + 1;
+                    ends[open] = end;
+                    mins[open] = minInRange(i + 1, end);
+                    open++;
+                }
+            }
+            return result;
+        }
+
+        private static boolean contains(int[] array, int count, int value) {
+            for (int i = 0; i < count; i++) {
+                if (array[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
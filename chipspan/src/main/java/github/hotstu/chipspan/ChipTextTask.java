@@ -0,0 +1,100 @@
+package github.hotstu.chipspan;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.SpannableStringBuilder;
+import android.widget.TextView;
+
+import androidx.annotation.XmlRes;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 后台构建chip文本：创建span、测量chip、PrecomputedTextCompat预计算，完成后回到主线程设置
+ * 同一个TextView上新的任务会让旧任务作废
+ * @since 10/17/26
+ */
+final class ChipTextTask implements Runnable {
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final Executor EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "chipspan-precompute");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final WeakReference<TextView> mViewRef;
+    private final Context mContext;
+    private final List<String> mTexts;
+    private final int mRes;
+    private final PrecomputedTextCompat.Params mParams;
+    private volatile boolean mCancelled;
+
+    private ChipTextTask(TextView v, List<String> texts, @XmlRes int res) {
+        this.mViewRef = new WeakReference<>(v);
+        this.mContext = v.getContext();
+        //数据在主线程上可能继续变化，拷贝一份
+        this.mTexts = new ArrayList<>(texts);
+        this.mRes = res;
+        this.mParams = TextViewCompat.getTextMetricsParams(v);
+    }
+
+    static void submit(TextView v, List<String> texts, @XmlRes int res) {
+        cancel(v);
+        ChipTextTask task = new ChipTextTask(v, texts, res);
+        v.setTag(R.id.tag_chip_task, task);
+        EXECUTOR.execute(task);
+    }
+
+    static void cancel(TextView v) {
+        Object tag = v.getTag(R.id.tag_chip_task);
+        if (tag instanceof ChipTextTask) {
+            ((ChipTextTask) tag).mCancelled = true;
+            v.setTag(R.id.tag_chip_task, null);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (mCancelled) {
+            return;
+        }
+        final SpannableStringBuilder sb = ChipSpanBindings.buildChips(mContext, mTexts, mRes, false, null);
+        if (mCancelled) {
+            return;
+        }
+        //PrecomputedText会调用每个ChipSpan的getSize，chip的测量也一并在这里完成
+        final PrecomputedTextCompat text = PrecomputedTextCompat.create(sb, mParams);
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                apply(sb, text);
+            }
+        });
+    }
+
+    private void apply(SpannableStringBuilder sb, PrecomputedTextCompat text) {
+        TextView v = mViewRef.get();
+        if (mCancelled || v == null || v.getTag(R.id.tag_chip_task) != this) {
+            return;
+        }
+        v.setTag(R.id.tag_chip_task, null);
+        try {
+            TextViewCompat.setPrecomputedText(v, text);
+        } catch (IllegalArgumentException e) {
+            //任务执行期间TextView的排版参数变了，预计算结果不可用
+            v.setText(sb, TextView.BufferType.SPANNABLE);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package github.hotstu.chipspan;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.AppCompatTextView;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 把悬停、按键和焦点变化转发给{@link ChipAccessibilityHelper}的TextView
+ * 普通TextView绑定bind:chipAccessible后只有无障碍节点；需要触摸浏览和方向键在chip之间移动时使用这个类，
+ * 或者在自己的View中照样转发
+ * @since 10/17/26
+ */
+public class ChipTextView extends AppCompatTextView {
+
+    public ChipTextView(Context context) {
+        super(context);
+    }
+
+    public ChipTextView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public ChipTextView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return ChipAccessibilityHelper.dispatchHoverEvent(this, event) || super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        return ChipAccessibilityHelper.dispatchKeyEvent(this, event) || super.dispatchKeyEvent(event);
+    }
+
+    @Override
+    protected void onFocusChanged(boolean focused, int direction, @Nullable Rect previouslyFocusedRect) {
+        super.onFocusChanged(focused, direction, previouslyFocusedRect);
+        ChipAccessibilityHelper.onFocusChanged(this, focused);
+    }
+}
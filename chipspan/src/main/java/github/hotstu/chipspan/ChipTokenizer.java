@@ -0,0 +1,317 @@
+package github.hotstu.chipspan;
+
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.view.Choreographer;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.XmlRes;
+import androidx.core.view.ViewCompat;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 输入框中按分隔符把文本转换成chip
+ * 转换按帧分片：每帧只在时间预算内处理一批token，一批只对Editable做一次replace，
+ * 粘贴几千个地址时界面仍然可以响应；已经是chip的区间会被跳过
+ * TextView离开窗口时暂停，重新attach后继续；只能在主线程使用
+ * @since 10/17/26
+ */
+public class ChipTokenizer implements TextWatcher, Choreographer.FrameCallback, View.OnAttachStateChangeListener {
+    public static final String DEFAULT_DELIMITERS = ",;\n";
+    public static final long DEFAULT_FRAME_BUDGET_MILLIS = 4;
+
+    /**
+     * 回调都在主线程
+     */
+    public static class Callback {
+        /**
+         * @param total 目前已知的token总数，粘贴更多内容时会增大
+         */
+        public void onProgress(int converted, int total) {
+        }
+
+        public void onFinished(int converted) {
+        }
+
+        public void onCancelled(int converted) {
+        }
+    }
+
+    private final TextView mTextView;
+    private final int mRes;
+    private String mDelimiters = DEFAULT_DELIMITERS;
+    private long mFrameBudgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FRAME_BUDGET_MILLIS);
+    private Callback mCallback = new Callback();
+    /**
+     * [0, mScanFrom)之间的token都已经处理过
+     */
+    private int mScanFrom;
+    private boolean mScheduled;
+    private boolean mApplying;
+    private int mConverted;
+    private int mTotal;
+
+    private ChipTokenizer(TextView textView, @XmlRes int res) {
+        this.mTextView = textView;
+        this.mRes = res;
+    }
+
+    @NonNull
+    public static ChipTokenizer attach(@NonNull TextView textView) {
+        return attach(textView, R.xml.standalone_chip_action);
+    }
+
+    @NonNull
+    public static ChipTokenizer attach(@NonNull TextView textView, @XmlRes int res) {
+        Object tag = textView.getTag(R.id.tag_chip_tokenizer);
+        if (tag instanceof ChipTokenizer && ((ChipTokenizer) tag).mRes == res) {
+            return (ChipTokenizer) tag;
+        }
+        detach(textView);
+        if (!(textView.getText() instanceof Editable)) {
+            textView.setText(textView.getText(), TextView.BufferType.EDITABLE);
+        }
+        ChipTokenizer tokenizer = new ChipTokenizer(textView, res);
+        textView.setTag(R.id.tag_chip_tokenizer, tokenizer);
+        textView.addTextChangedListener(tokenizer);
+        textView.addOnAttachStateChangeListener(tokenizer);
+        tokenizer.schedule();
+        return tokenizer;
+    }
+
+    public static void detach(@NonNull TextView textView) {
+        Object tag = textView.getTag(R.id.tag_chip_tokenizer);
+        if (tag instanceof ChipTokenizer) {
+            ChipTokenizer tokenizer = (ChipTokenizer) tag;
+            textView.removeTextChangedListener(tokenizer);
+            textView.removeOnAttachStateChangeListener(tokenizer);
+            tokenizer.cancel();
+            textView.setTag(R.id.tag_chip_tokenizer, null);
+        }
+    }
+
+    /**
+     * @param delimiters 其中任意一个字符都结束一个token
+     */
+    public ChipTokenizer setDelimiters(@NonNull String delimiters) {
+        this.mDelimiters = delimiters;
+        return this;
+    }
+
+    /**
+     * 每帧用于转换的时间，至少会转换一个token
+     */
+    public ChipTokenizer setFrameBudget(long millis) {
+        this.mFrameBudgetNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    public ChipTokenizer setCallback(Callback callback) {
+        this.mCallback = callback != null ? callback : new Callback();
+        return this;
+    }
+
+    public boolean isRunning() {
+        return mScheduled;
+    }
+
+    /**
+     * 停止尚未完成的转换，剩余的文本保持原样，之后的输入会重新触发转换
+     */
+    public void cancel() {
+        if (!mScheduled) {
+            return;
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+        mScheduled = false;
+        mScanFrom = mTextView.getText().length();
+        int converted = mConverted;
+        mConverted = mTotal = 0;
+        mCallback.onCancelled(converted);
+    }
+
+    private void schedule() {
+        if (!(mTextView.getText() instanceof Editable)) {
+            return;
+        }
+        Editable text = (Editable) mTextView.getText();
+        int pending = countDelimiters(text, mScanFrom);
+        if (pending == 0) {
+            return;
+        }
+        mTotal = Math.max(mTotal, mConverted + pending);
+        //不在窗口中时等onViewAttachedToWindow再开始
+        if (!mScheduled && ViewCompat.isAttachedToWindow(mTextView)) {
+            mScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private int countDelimiters(CharSequence text, int from) {
+        int count = 0;
+        for (int i = from, n = text.length(); i < n; i++) {
+            if (mDelimiters.indexOf(text.charAt(i)) >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        if (!(mTextView.getText() instanceof Editable)) {
+            return;
+        }
+        long start = ChipMetrics.begin("ChipSpan:tokenize");
+        int before = mConverted;
+        boolean more = convertBatch((Editable) mTextView.getText(), System.nanoTime() + mFrameBudgetNanos);
+        ChipMetrics.getListener().onTokenized(mConverted - before, ChipMetrics.end(start));
+        if (more) {
+            mScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+            mCallback.onProgress(mConverted, mTotal);
+        } else {
+            int converted = mConverted;
+            mConverted = mTotal = 0;
+            mCallback.onFinished(converted);
+        }
+    }
+
+    /**
+     * 从mScanFrom开始转换token，直到用完时间预算；所有修改合并为一次replace
+     *
+     * @return 是否还有未处理的完整token
+     */
+    private boolean convertBatch(Editable text, long deadline) {
+        int length = text.length();
+        int batchStart = Math.min(mScanFrom, length);
+        int p = batchStart;
+        int copied = batchStart;
+        SpannableStringBuilder sb = null;
+        boolean more = false;
+        //每批只查询一次chip，扫描时按位置顺序推进
+        ChipSpan[] chips = sortedChips(text, batchStart, length);
+        int next = 0;
+        while (p < length) {
+            while (next < chips.length && text.getSpanEnd(chips[next]) <= p) {
+                next++;
+            }
+            int limit = next < chips.length ? text.getSpanStart(chips[next]) : length;
+            if (limit <= p) {
+                //已经是chip的区间整体跳过
+                p = Math.max(p + 1, text.getSpanEnd(chips[next]));
+                next++;
+                continue;
+            }
+            int delimiter = indexOfDelimiter(text, p, limit);
+            if (delimiter < 0) {
+                if (limit == length) {
+                    //末尾还在输入的token
+                    break;
+                }
+                p = limit;
+                continue;
+            }
+            if (sb != null && System.nanoTime() > deadline) {
+                more = true;
+                break;
+            }
+            String token = text.subSequence(p, delimiter).toString().trim();
+            if (token.length() > 0) {
+                if (sb == null) {
+                    sb = new SpannableStringBuilder();
+                }
+                sb.append(text, copied, p);
+                ChipSpan span = new ChipSpan(mTextView.getContext(), token, mRes);
+                //在预算内完成测量，layout时只剩缓存查找
+                span.getSize(mTextView.getPaint(), token, 0, token.length(), null);
+                ChipSpanBindings.appendChip(sb, span);
+                copied = delimiter + 1;
+                mConverted++;
+            }
+            p = delimiter + 1;
+        }
+        if (sb != null) {
+            int end = copied;
+            mApplying = true;
+            mTextView.beginBatchEdit();
+            try {
+                text.replace(batchStart, end, sb);
+            } finally {
+                mTextView.endBatchEdit();
+                mApplying = false;
+            }
+            //replace之后[batchStart, batchStart + sb.length())都已处理
+            mScanFrom = batchStart + sb.length();
+        } else {
+            mScanFrom = p;
+        }
+        return more;
+    }
+
+    private static ChipSpan[] sortedChips(final Spanned text, int start, int end) {
+        ChipSpan[] chips = text.getSpans(start, end, ChipSpan.class);
+        if (chips.length > 1) {
+            Arrays.sort(chips, new Comparator<ChipSpan>() {
+                @Override
+                public int compare(ChipSpan o1, ChipSpan o2) {
+                    return text.getSpanStart(o1) - text.getSpanStart(o2);
+                }
+            });
+        }
+        return chips;
+    }
+
+    private int indexOfDelimiter(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (mDelimiters.indexOf(text.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        schedule();
+    }
+
+    /**
+     * 暂停而不是取消：已知的进度保留，重新attach后从mScanFrom继续
+     */
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        if (mScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mScheduled = false;
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (!mApplying && start < mScanFrom) {
+            //在已处理的区间内编辑，从编辑处重新扫描
+            mScanFrom = start;
+        }
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        if (!mApplying) {
+            schedule();
+        }
+    }
+}
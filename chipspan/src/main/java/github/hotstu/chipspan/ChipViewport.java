@@ -0,0 +1,124 @@
+package github.hotstu.chipspan;
+
+import android.graphics.Rect;
+import android.text.Layout;
+import android.text.Spanned;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * @author hglf [hglf](https://github.com/hotstu)
+ * @desc 虚拟化：每帧绘制前计算TextView的可见行，滚出可见区域的chip释放drawable
+ * ChipSpan在measure阶段不创建drawable，只有被draw时才会创建，
+ * 所以常驻的drawable数量只和可见的chip数量有关。
+ * 可见行变化时释放可见区域之外所有持有drawable的chip，而不只是上一次可见的那些：
+ * 可见行不变的帧里也可能有chip重新取得drawable(释放之后被重绘、文本长度不变的替换)，它们在下一次变化时一并释放
+ * @since 10/17/26
+ */
+public class ChipViewport implements ViewTreeObserver.OnPreDrawListener, View.OnAttachStateChangeListener {
+    private final TextView mTextView;
+    private final Rect mVisible = new Rect();
+    private final Set<ChipSpan> mVisibleSet = Collections.newSetFromMap(new IdentityHashMap<ChipSpan, Boolean>());
+    private Layout mLayout;
+    private CharSequence mText;
+    private int mTextLength = -1;
+    private int mFirstLine = -1;
+    private int mLastLine = -1;
+
+    private ChipViewport(TextView textView) {
+        this.mTextView = textView;
+    }
+
+    public static void attach(@NonNull TextView textView) {
+        if (textView.getTag(R.id.tag_chip_viewport) instanceof ChipViewport) {
+            return;
+        }
+        ChipViewport viewport = new ChipViewport(textView);
+        textView.setTag(R.id.tag_chip_viewport, viewport);
+        textView.addOnAttachStateChangeListener(viewport);
+        if (textView.getWindowToken() != null) {
+            viewport.onViewAttachedToWindow(textView);
+        }
+    }
+
+    public static void detach(@NonNull TextView textView) {
+        Object tag = textView.getTag(R.id.tag_chip_viewport);
+        if (tag instanceof ChipViewport) {
+            ChipViewport viewport = (ChipViewport) tag;
+            textView.removeOnAttachStateChangeListener(viewport);
+            textView.getViewTreeObserver().removeOnPreDrawListener(viewport);
+            textView.setTag(R.id.tag_chip_viewport, null);
+        }
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        v.getViewTreeObserver().addOnPreDrawListener(this);
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        v.getViewTreeObserver().removeOnPreDrawListener(this);
+        releaseAll();
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        Layout layout = mTextView.getLayout();
+        CharSequence text = mTextView.getText();
+        if (layout == null || !(text instanceof Spanned)) {
+            return true;
+        }
+        if (!mTextView.getLocalVisibleRect(mVisible)) {
+            if (mFirstLine >= 0) {
+                releaseAll();
+            }
+            return true;
+        }
+        int paddingTop = mTextView.getTotalPaddingTop();
+        int first = layout.getLineForVertical(mVisible.top - paddingTop);
+        int last = layout.getLineForVertical(mVisible.bottom - paddingTop);
+        if (first == mFirstLine && last == mLastLine && layout == mLayout
+                && text == mText && text.length() == mTextLength) {
+            return true;
+        }
+        mFirstLine = first;
+        mLastLine = last;
+        mLayout = layout;
+        mText = text;
+        mTextLength = text.length();
+
+        int start = layout.getLineStart(first);
+        int end = layout.getLineEnd(last);
+        Spanned spanned = (Spanned) text;
+        mVisibleSet.clear();
+        Collections.addAll(mVisibleSet, spanned.getSpans(start, end, ChipSpan.class));
+        releaseInvisible(spanned.getSpans(0, start, ChipSpan.class));
+        releaseInvisible(spanned.getSpans(end, spanned.length(), ChipSpan.class));
+        return true;
+    }
+
+    private void releaseInvisible(ChipSpan[] spans) {
+        for (ChipSpan span : spans) {
+            if (span.isDrawableHeld() && !mVisibleSet.contains(span)) {
+                span.releaseDrawable();
+            }
+        }
+    }
+
+    private void releaseAll() {
+        CharSequence text = mTextView.getText();
+        if (text instanceof Spanned) {
+            mVisibleSet.clear();
+            releaseInvisible(((Spanned) text).getSpans(0, text.length(), ChipSpan.class));
+        }
+        mFirstLine = mLastLine = -1;
+    }
+}
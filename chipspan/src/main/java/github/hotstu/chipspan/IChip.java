@@ -1,12 +1,41 @@
 package github.hotstu.chipspan;
 
+import androidx.annotation.Nullable;
+
 /**
  * @author hglf [hglf](https://github.com/hotstu)
  * @desc
  * @since 4/27/20
  */
 public interface IChip {
+    /**
+     * 没有id的chip
+     */
+    long NO_ID = -1;
+
     void setPressed(boolean isPressed);
 
+    /**
+     * 用来跳过重复的按下和重绘；默认实现不知道状态，总是返回false
+     */
+    default boolean isPressed() {
+        return false;
+    }
+
     String getText();
+
+    /**
+     * @return 稳定的id，文本重复时也能区分chip，见{@link ChipIdIndex}；默认没有id
+     */
+    default long getId() {
+        return NO_ID;
+    }
+
+    /**
+     * @return 与chip关联的业务对象，例如联系人
+     */
+    @Nullable
+    default Object getPayload() {
+        return null;
+    }
 }
@@ -0,0 +1,122 @@
+package github.hotstu.chipspan;
+
+import android.app.Activity;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static github.hotstu.chipspan.testing.ChipTestSupport.themed;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 只暴露可见的chip，不占用宿主的listener
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ChipAccessibilityHelperTest {
+    private static final int COUNT = 60;
+
+    private TextView tv;
+    private ChipAccessibilityHelper helper;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        tv = new ChipTextView(themed(activity));
+        List<String> texts = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            texts.add("Chip " + i);
+        }
+        ChipSpanBindings.bindChipText(tv, texts);
+        activity.setContentView(tv, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 200));
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void attach_keepsHostListeners() {
+        View.OnFocusChangeListener focus = new View.OnFocusChangeListener() {
+            @Override
+            public void onFocusChange(View v, boolean hasFocus) {
+            }
+        };
+        tv.setOnFocusChangeListener(focus);
+        ChipAccessibilityHelper.attach(tv);
+
+        assertSame(focus, tv.getOnFocusChangeListener());
+        ChipAccessibilityHelper.detach(tv);
+        assertSame(focus, tv.getOnFocusChangeListener());
+    }
+
+    @Test
+    public void visibleVirtualViews_excludeScrolledOutChips() {
+        ChipAccessibilityHelper.attach(tv);
+        helper = (ChipAccessibilityHelper) tv.getTag(R.id.tag_chip_accessibility);
+        ChipLayoutIndex index = ChipLayoutIndex.of(tv);
+        assertEquals(COUNT, index.size());
+
+        List<Integer> ids = new ArrayList<>();
+        helper.getVisibleVirtualViews(ids);
+        assertVisible(ids, index);
+        assertTrue(ids.contains(0));
+        assertTrue(!ids.contains(COUNT - 1));
+
+        tv.scrollTo(0, tv.getLayout().getHeight() - tv.getHeight());
+        ids.clear();
+        helper.getVisibleVirtualViews(ids);
+        assertVisible(ids, index);
+        assertTrue(!ids.contains(0));
+        assertTrue(ids.contains(COUNT - 1));
+    }
+
+    @Test
+    public void nodeBounds_onScrolledView_subtractScrollOnce() {
+        ChipAccessibilityHelper.attach(tv);
+        helper = (ChipAccessibilityHelper) tv.getTag(R.id.tag_chip_accessibility);
+        ChipLayoutIndex index = ChipLayoutIndex.of(tv);
+        tv.scrollTo(0, tv.getLayout().getHeight() - tv.getHeight());
+        int id = COUNT - 1;
+
+        //boundsInParent不含滚动，ExploreByTouchHelper换算屏幕坐标时自己减去
+        AccessibilityNodeInfoCompat node = AccessibilityNodeInfoCompat.obtain();
+        helper.onPopulateNodeForVirtualView(id, node);
+        Rect inParent = new Rect();
+        node.getBoundsInParent(inParent);
+        Rect expected = new Rect();
+        index.getChipBounds(id, expected);
+        expected.offset(tv.getTotalPaddingLeft(), tv.getTotalPaddingTop());
+        assertEquals(expected, inParent);
+        node.recycle();
+    }
+
+    private void assertVisible(List<Integer> ids, ChipLayoutIndex index) {
+        assertTrue(!ids.isEmpty());
+        assertTrue(ids.size() < COUNT);
+        Rect viewport = new Rect(tv.getScrollX(), tv.getScrollY(),
+                tv.getScrollX() + tv.getWidth() - tv.getTotalPaddingLeft() - tv.getTotalPaddingRight(),
+                tv.getScrollY() + tv.getHeight() - tv.getTotalPaddingTop() - tv.getTotalPaddingBottom());
+        Rect bounds = new Rect();
+        for (int id : ids) {
+            index.getChipBounds(id, bounds);
+            assertTrue(Rect.intersects(viewport, bounds));
+        }
+    }
+}
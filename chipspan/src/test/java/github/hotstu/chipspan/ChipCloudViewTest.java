@@ -0,0 +1,138 @@
+package github.hotstu.chipspan;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static github.hotstu.chipspan.testing.ChipTestSupport.themed;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 增量排版的边界：不限高度的测量、宽度变化后的锚点、最后一行之下的点击、滚出可见区域的chip回收span
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ChipCloudViewTest {
+    private static final int COUNT = 1000;
+
+    private ChipCloudView cloud;
+    private int clicked;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        cloud = new ChipCloudView(themed(activity));
+        List<String> texts = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            texts.add("Chip " + i);
+        }
+        cloud.setChips(texts);
+        clicked = -1;
+        cloud.setOnChipClickListener(new ChipCloudView.OnChipClickListener() {
+            @Override
+            public void onChipClick(ChipCloudView view, IChip chip, int position) {
+                clicked = position;
+            }
+        });
+    }
+
+    @Test
+    public void unspecifiedHeight_laysOutAtMostOneScreen() {
+        cloud.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+
+        int screen = cloud.getResources().getDisplayMetrics().heightPixels;
+        assertTrue(cloud.getMeasuredHeight() <= screen);
+        assertTrue(cloud.laidOutCount() > 0);
+        assertTrue("laid out " + cloud.laidOutCount() + " chips", cloud.laidOutCount() < COUNT);
+    }
+
+    @Test
+    public void relayout_keepsTopRowAnchored() {
+        layout(1080, 800);
+        cloud.scrollToChip(500);
+        int anchor = cloud.getFirstVisiblePosition();
+        assertTrue(anchor <= 500 && 500 <= cloud.getLastVisiblePosition());
+
+        layout(540, 800);
+        assertEquals(cloud.chipTop(anchor), cloud.getScrollY());
+        assertTrue(cloud.getFirstVisiblePosition() <= anchor);
+    }
+
+    @Test
+    public void tapBelowLastRow_isIgnored() {
+        cloud.setChips(Arrays.asList("Android", "iOS", "Java"));
+        layout(1080, 800);
+        assertEquals(2, cloud.getLastVisiblePosition());
+
+        tap(cloud.getWidth() / 2f, cloud.getHeight() - 1);
+        assertEquals(-1, clicked);
+
+        tap(cloud.getPaddingLeft() + 1, cloud.getPaddingTop() + 1);
+        assertEquals(0, clicked);
+    }
+
+    @Test
+    public void scrolledOutChips_releaseDrawables() {
+        layout(1080, 800);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(1080, 800, Bitmap.Config.ARGB_8888));
+        cloud.draw(canvas);
+        ChipSpan first = (ChipSpan) cloud.getChip(0);
+        assertTrue(first.isDrawableHeld());
+
+        cloud.scrollToChip(500);
+        cloud.draw(canvas);
+        int firstVisible = cloud.getFirstVisiblePosition();
+        int lastVisible = cloud.getLastVisiblePosition();
+        assertTrue(firstVisible > 0);
+        //第0个chip已经回收，getChip返回的是不持有drawable的临时对象
+        assertFalse(((ChipSpan) cloud.getChip(0)).isDrawableHeld());
+        assertTrue(((ChipSpan) cloud.getChip(firstVisible)).isDrawableHeld());
+        assertTrue(((ChipSpan) cloud.getChip(lastVisible)).isDrawableHeld());
+    }
+
+    @Test
+    public void scrolling_keepsSpansBoundedByViewport() {
+        layout(1080, 800);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(1080, 800, Bitmap.Config.ARGB_8888));
+        for (int position = 0; position < COUNT; position += 100) {
+            cloud.scrollToChip(position);
+            cloud.draw(canvas);
+            int visible = cloud.getLastVisiblePosition() - cloud.getFirstVisiblePosition() + 1;
+            assertTrue(cloud.spanCount() <= visible);
+        }
+        assertTrue(cloud.getFirstVisiblePosition() > 0);
+    }
+
+    private void layout(int width, int height) {
+        cloud.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        cloud.layout(0, 0, width, height);
+    }
+
+    private void tap(float x, float y) {
+        long now = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, x, y, 0);
+        MotionEvent up = MotionEvent.obtain(now, now + 10, MotionEvent.ACTION_UP, x, y, 0);
+        cloud.onTouchEvent(down);
+        cloud.onTouchEvent(up);
+        down.recycle();
+        up.recycle();
+    }
+}
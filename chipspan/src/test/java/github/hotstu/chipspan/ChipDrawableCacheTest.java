@@ -0,0 +1,120 @@
+package github.hotstu.chipspan;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Rect;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.android.material.chip.ChipDrawable;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static github.hotstu.chipspan.testing.ChipTestSupport.themed;
+import static github.hotstu.chipspan.testing.ChipTestSupport.themedContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 缓存的key(包括模板和尺寸缓存)按主题的样式区分，而不是按主题实例；被LRU淘汰的drawable仍可复用
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ChipDrawableCacheTest {
+    private static final int DARK = com.google.android.material.R.style.Theme_MaterialComponents;
+
+    @After
+    public void tearDown() {
+        ChipDrawableCache.get(ApplicationProvider.<Context>getApplicationContext()).evictAll();
+    }
+
+    @Test
+    public void sameStyleInDifferentActivities_sharesDrawable() {
+        Context first = themed(Robolectric.buildActivity(Activity.class).setup().get());
+        Context second = themed(Robolectric.buildActivity(Activity.class).setup().get());
+        ChipDrawableCache cache = ChipDrawableCache.get(first);
+
+        ChipDrawable drawable = cache.obtain(first, "Android", R.xml.standalone_chip_action);
+        assertSame(drawable, cache.obtain(second, "Android", R.xml.standalone_chip_action));
+    }
+
+    @Test
+    public void sameStyleInDifferentActivities_sharesSizesAndTemplates() {
+        Context first = themed(Robolectric.buildActivity(Activity.class).setup().get());
+        Context second = themed(Robolectric.buildActivity(Activity.class).setup().get());
+        ChipDrawableCache cache = ChipDrawableCache.get(first);
+        Rect bounds = new Rect();
+
+        cache.measure(first, "Android", R.xml.standalone_chip_action, bounds);
+        int measureHits = cache.measureHitCount();
+        int measured = cache.measuredSize();
+        cache.measure(second, "Android", R.xml.standalone_chip_action, bounds);
+        assertEquals(measureHits + 1, cache.measureHitCount());
+        assertEquals(measured, cache.measuredSize());
+
+        //新的文本需要测量，但模板不需要重新inflate
+        int templateHits = cache.templateHitCount();
+        cache.measure(second, "iOS", R.xml.standalone_chip_action, bounds);
+        assertEquals(templateHits + 1, cache.templateHitCount());
+    }
+
+    @Test
+    public void prewarmWithActivity_isHitByFirstMeasure() throws InterruptedException {
+        Context activity = themed(Robolectric.buildActivity(Activity.class).setup().get());
+        ChipDrawableCache cache = ChipDrawableCache.get(activity);
+        final CountDownLatch prewarmed = new CountDownLatch(1);
+        ChipMetrics.setListener(new ChipMetrics.Listener() {
+            @Override
+            public void onPrewarmed(int resId, long durationNanos) {
+                prewarmed.countDown();
+            }
+        });
+        try {
+            cache.prewarm(activity, R.xml.standalone_chip_entry);
+            assertTrue(prewarmed.await(10, TimeUnit.SECONDS));
+        } finally {
+            ChipMetrics.setListener(null);
+        }
+
+        int templateHits = cache.templateHitCount();
+        cache.measure(activity, "Android", R.xml.standalone_chip_entry, new Rect());
+        assertEquals(templateHits + 1, cache.templateHitCount());
+    }
+
+    @Test
+    public void differentStyles_doNotShareDrawable() {
+        Context app = ApplicationProvider.getApplicationContext();
+        ChipDrawableCache cache = ChipDrawableCache.get(app);
+
+        ChipDrawable light = cache.obtain(themed(app), "Android", R.xml.standalone_chip_action);
+        ChipDrawable dark = cache.obtain(new ContextThemeWrapper(app, DARK), "Android", R.xml.standalone_chip_action);
+        assertNotSame(light, dark);
+    }
+
+    @Test
+    public void evictedDrawable_isReusedWhileStillReferenced() {
+        Context context = themedContext();
+        ChipDrawableCache cache = ChipDrawableCache.get(context);
+        cache.resize(1);
+        try {
+            ChipDrawable android = cache.obtain(context, "Android", R.xml.standalone_chip_action);
+            cache.obtain(context, "iOS", R.xml.standalone_chip_action);
+            assertEquals(1, cache.size());
+            //只有强引用的LRU决定常驻的数量，仍在使用的drawable再次请求时不需要重新inflate
+            assertSame(android, cache.obtain(context, "Android", R.xml.standalone_chip_action));
+        } finally {
+            cache.resize(ChipDrawableCache.DEFAULT_MAX_SIZE);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package github.hotstu.chipspan;
+
+import android.text.Editable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import github.hotstu.chipspan.testing.ChipTestSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 在文本开头、中间和末尾增删、移动、替换chip，文本、span的位置和span的实例都要正确
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ChipEditorTest {
+    private TextView tv;
+    private ChipEditor editor;
+    private int textChanges;
+
+    @Before
+    public void setUp() {
+        tv = new TextView(ChipTestSupport.themedContext());
+        editor = ChipEditor.of(tv, R.xml.standalone_chip_entry);
+        editor.addAll(Arrays.asList("A", "B", "C"));
+        tv.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                textChanges++;
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+    }
+
+    @Test
+    public void addAll_atStartAndEnd() {
+        editor.addAll(0, Collections.singletonList("Z"));
+        assertChips("Z", "A", "B", "C");
+        editor.addAll(4, Collections.singletonList("D"));
+        assertChips("Z", "A", "B", "C", "D");
+    }
+
+    @Test
+    public void remove_firstAndLast() {
+        List<ChipSpan> chips = chips();
+        editor.remove(chips.get(0));
+        assertChips("B", "C");
+        editor.remove(chips.get(2));
+        assertChips("B");
+        assertSame(chips.get(1), chips().get(0));
+    }
+
+    @Test
+    public void move_keepsSpanInstance() {
+        List<ChipSpan> chips = chips();
+        editor.move(chips.get(0), 2);
+        assertChips("B", "C", "A");
+        assertSame(chips.get(0), chips().get(2));
+
+        editor.move(chips.get(0), 0);
+        assertChips("A", "B", "C");
+        assertSame(chips.get(0), chips().get(0));
+        assertSame(chips.get(2), chips().get(2));
+    }
+
+    @Test
+    public void replace_firstAndLast() {
+        List<ChipSpan> chips = chips();
+        editor.replace(chips.get(0), "X");
+        editor.replace(chips.get(2), "Y");
+        assertChips("X", "B", "Y");
+        assertSame(chips.get(1), chips().get(1));
+    }
+
+    @Test
+    public void batch_appliesOneTextChange() {
+        List<ChipSpan> chips = chips();
+        textChanges = 0;
+        editor.beginBatch();
+        editor.remove(chips.get(1));
+        editor.addAll(0, Collections.singletonList("Z"));
+        editor.move(chips.get(2), 0);
+        editor.addAll(Collections.singletonList("D"));
+        editor.endBatch();
+
+        assertEquals(1, textChanges);
+        assertChips("C", "Z", "A", "D");
+        assertSame(chips.get(2), chips().get(0));
+        assertSame(chips.get(0), chips().get(2));
+    }
+
+    @Test
+    public void batchWithoutChanges_leavesTextUntouched() {
+        textChanges = 0;
+        editor.beginBatch();
+        editor.endBatch();
+        assertEquals(0, textChanges);
+    }
+
+    /**
+     * 同时检查每个chip的span正好覆盖它的文本，后面紧跟一个空格
+     */
+    private void assertChips(String... expected) {
+        Spanned text = (Spanned) tv.getText();
+        StringBuilder joined = new StringBuilder();
+        List<String> actual = new ArrayList<>();
+        for (ChipSpan chip : chips()) {
+            int start = text.getSpanStart(chip);
+            int end = text.getSpanEnd(chip);
+            assertEquals(chip.getText(), text.subSequence(start, end).toString());
+            assertEquals(' ', text.charAt(end));
+            actual.add(chip.getText());
+        }
+        for (String s : expected) {
+            joined.append(s).append(' ');
+        }
+        assertEquals(Arrays.asList(expected), actual);
+        assertEquals(joined.toString(), text.toString());
+    }
+
+    private List<ChipSpan> chips() {
+        final Spanned text = (Spanned) tv.getText();
+        ChipSpan[] chips = text.getSpans(0, text.length(), ChipSpan.class);
+        Arrays.sort(chips, new Comparator<ChipSpan>() {
+            @Override
+            public int compare(ChipSpan o1, ChipSpan o2) {
+                return text.getSpanStart(o1) - text.getSpanStart(o2);
+            }
+        });
+        return Arrays.asList(chips);
+    }
+}
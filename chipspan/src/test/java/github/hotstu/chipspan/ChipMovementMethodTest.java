@@ -0,0 +1,348 @@
+package github.hotstu.chipspan;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.Spannable;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static github.hotstu.chipspan.testing.ChipTestSupport.steadyStateAllocatedBytes;
+import static github.hotstu.chipspan.testing.ChipTestSupport.themed;
+import static github.hotstu.chipspan.testing.ChipTestSupport.themedContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 点击/长按语义，以及一次完整的down/move/up/cancel触摸周期不产生分配
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ChipMovementMethodTest {
+    private static final int ITERATIONS = 10000;
+
+    private ChipMovementMethod method;
+    private int clicks;
+    private int longClicks;
+    private IChip lastChip;
+
+    @Before
+    public void setUp() {
+        method = ChipMovementMethod.newInstance()
+                .setOnClickListener(new ChipMovementMethod.OnClickListener() {
+                    @Override
+                    public boolean onClick(TextView tv, IChip span) {
+                        clicks++;
+                        lastChip = span;
+                        return true;
+                    }
+                })
+                .setOnLongClickListener(new ChipMovementMethod.OnLongClickListener() {
+                    @Override
+                    public boolean onLongClick(TextView tv, IChip span) {
+                        longClicks++;
+                        lastChip = span;
+                        return true;
+                    }
+                });
+    }
+
+    @Test
+    public void tap_dispatchesClick() {
+        TextView tv = attachedTextView();
+        ChipSpan chip = firstChip(tv);
+        Rect r = chipRect(tv, chip);
+
+        touch(tv, MotionEvent.ACTION_DOWN, r.centerX(), r.centerY());
+        assertTrue(chip.isPressed());
+        touch(tv, MotionEvent.ACTION_UP, r.centerX(), r.centerY());
+
+        assertEquals(1, clicks);
+        assertEquals(0, longClicks);
+        assertSame(chip, lastChip);
+        assertTrue(!chip.isPressed());
+    }
+
+    @Test
+    public void longPress_dispatchesLongClickOnly() {
+        TextView tv = attachedTextView();
+        ChipSpan chip = firstChip(tv);
+        Rect r = chipRect(tv, chip);
+
+        touch(tv, MotionEvent.ACTION_DOWN, r.centerX(), r.centerY());
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(ViewConfiguration.getLongPressTimeout() + 10));
+        touch(tv, MotionEvent.ACTION_UP, r.centerX(), r.centerY());
+
+        assertEquals(0, clicks);
+        assertEquals(1, longClicks);
+        assertSame(chip, lastChip);
+    }
+
+    @Test
+    public void otherActions_afterChipDown_areNotConsumed() {
+        TextView tv = attachedTextView();
+        ChipSpan chip = firstChip(tv);
+        Rect r = chipRect(tv, chip);
+
+        assertTrue(touch(tv, MotionEvent.ACTION_DOWN, r.centerX(), r.centerY()));
+        assertTrue(!touch(tv, MotionEvent.ACTION_POINTER_DOWN, r.centerX(), r.centerY()));
+        assertTrue(touch(tv, MotionEvent.ACTION_UP, r.centerX(), r.centerY()));
+        assertEquals(1, clicks);
+    }
+
+    @Test
+    public void movingOffChip_cancelsClickAndLongPress() {
+        TextView tv = attachedTextView();
+        ChipSpan chip = firstChip(tv);
+        Rect r = chipRect(tv, chip);
+
+        touch(tv, MotionEvent.ACTION_DOWN, r.centerX(), r.centerY());
+        touch(tv, MotionEvent.ACTION_MOVE, tv.getWidth() - 1, tv.getHeight() - 1);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(ViewConfiguration.getLongPressTimeout() + 10));
+        touch(tv, MotionEvent.ACTION_UP, tv.getWidth() - 1, tv.getHeight() - 1);
+
+        assertEquals(0, clicks);
+        assertEquals(0, longClicks);
+    }
+
+    @Test
+    public void sharedInstance_keepsConcurrentGesturesApart() {
+        TextView first = attachedTextView();
+        TextView second = attachedTextView();
+        ChipSpan firstChip = firstChip(first);
+        ChipSpan secondChip = firstChip(second);
+        Rect r1 = chipRect(first, firstChip);
+        Rect r2 = chipRect(second, secondChip);
+
+        touch(first, MotionEvent.ACTION_DOWN, r1.centerX(), r1.centerY());
+        touch(second, MotionEvent.ACTION_DOWN, r2.centerX(), r2.centerY());
+        touch(first, MotionEvent.ACTION_UP, r1.centerX(), r1.centerY());
+        assertEquals(1, clicks);
+        assertSame(firstChip, lastChip);
+        assertTrue(secondChip.isPressed());
+
+        touch(second, MotionEvent.ACTION_UP, r2.centerX(), r2.centerY());
+        assertEquals(2, clicks);
+        assertSame(secondChip, lastChip);
+    }
+
+    @Test
+    public void sharedInstance_withoutListeners_pressesAndReleases() {
+        assertSame(ChipMovementMethod.getInstance(), ChipMovementMethod.getInstance());
+        method = (ChipMovementMethod) ChipMovementMethod.getInstance();
+        TextView tv = attachedTextView();
+        ChipSpan chip = firstChip(tv);
+        Rect r = chipRect(tv, chip);
+
+        touch(tv, MotionEvent.ACTION_DOWN, r.centerX(), r.centerY());
+        assertTrue(chip.isPressed());
+        touch(tv, MotionEvent.ACTION_UP, r.centerX(), r.centerY());
+        assertTrue(!chip.isPressed());
+        assertEquals(0, clicks);
+    }
+
+    @Test
+    public void touchCycle_doesNotAllocate() {
+        final TextView tv = layoutTextView(new QuietTextView(themedContext()));
+        final Rect r = chipRect(tv, firstChip(tv));
+        final Spannable text = (Spannable) tv.getText();
+        long now = SystemClock.uptimeMillis();
+        final MotionEvent event = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, r.centerX(), r.centerY(), 0);
+
+        long allocated = steadyStateAllocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                cycle(tv, text, event, r);
+            }
+        }, ITERATIONS);
+        event.recycle();
+
+        assertEquals("touch cycles allocated bytes", 0, allocated);
+        assertTrue(clicks > 0);
+    }
+
+    @Test
+    public void chipBounds_matchLayoutAndDoNotAllocate() {
+        TextView tv = attachedTextView();
+        final ChipSpan chip = firstChip(tv);
+        Rect bounds = new Rect();
+        assertTrue(chip.getBounds(tv, bounds));
+        assertEquals(chipRect(tv, chip), bounds);
+
+        Rect onScreen = new Rect();
+        assertTrue(chip.getBoundsOnScreen(tv, onScreen));
+        assertEquals(expectedOnScreen(tv, chip), onScreen);
+
+        //滚动之后View坐标不变(canvas已经随滚动平移)，屏幕坐标减去滚动
+        tv.scrollTo(0, 10);
+        assertTrue(chip.getBounds(tv, bounds));
+        assertEquals(chipRect(tv, chip), bounds);
+        assertTrue(chip.getBoundsOnScreen(tv, onScreen));
+        assertEquals(expectedOnScreen(tv, chip), onScreen);
+
+        //平移不经过layout，屏幕位置也不能用上一帧的缓存
+        tv.setTranslationY(50);
+        assertTrue(chip.getBoundsOnScreen(tv, onScreen));
+        assertEquals(expectedOnScreen(tv, chip), onScreen);
+
+        final TextView view = tv;
+        final Rect viewBounds = bounds;
+        final Rect screenBounds = onScreen;
+        long allocated = steadyStateAllocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                chip.getBounds(view, viewBounds);
+                chip.getBoundsOnScreen(view, screenBounds);
+            }
+        }, ITERATIONS);
+        assertEquals("bounds queries allocated bytes", 0, allocated);
+    }
+
+    private static Rect expectedOnScreen(TextView tv, ChipSpan chip) {
+        int[] location = new int[2];
+        tv.getLocationOnScreen(location);
+        Rect r = chipRect(tv, chip);
+        r.offset(location[0] - tv.getScrollX(), location[1] - tv.getScrollY());
+        return r;
+    }
+
+    private void cycle(TextView tv, Spannable text, MotionEvent event, Rect r) {
+        //down/move/up
+        event.setAction(MotionEvent.ACTION_DOWN);
+        event.setLocation(r.centerX(), r.centerY());
+        method.onTouchEvent(tv, text, event);
+        event.setAction(MotionEvent.ACTION_MOVE);
+        event.setLocation(r.centerX() + 1, r.centerY());
+        method.onTouchEvent(tv, text, event);
+        event.setAction(MotionEvent.ACTION_UP);
+        method.onTouchEvent(tv, text, event);
+        //down/cancel
+        event.setAction(MotionEvent.ACTION_DOWN);
+        event.setLocation(r.centerX(), r.centerY());
+        method.onTouchEvent(tv, text, event);
+        event.setAction(MotionEvent.ACTION_CANCEL);
+        method.onTouchEvent(tv, text, event);
+    }
+
+    @Test
+    public void pressOnScrolledView_invalidatesChipRectOnce() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        RecordingTextView tv = new RecordingTextView(themed(activity));
+        attach(activity, tv);
+        ChipSpan chip = firstChip(tv);
+        Rect r = chipRect(tv, chip);
+        tv.scrollTo(0, r.top);
+
+        tv.dirty.setEmpty();
+        touch(tv, MotionEvent.ACTION_DOWN, r.centerX(), r.centerY() - r.top);
+        shadowOf(Looper.getMainLooper()).idle();
+        //invalidate(l,t,r,b)自己会减去滚动，传进去的应该是未减滚动的区域
+        assertEquals(r, tv.dirty);
+        assertTrue(chip.isPressed());
+
+        touch(tv, MotionEvent.ACTION_CANCEL, r.centerX(), r.centerY() - r.top);
+        assertTrue(!chip.isPressed());
+    }
+
+    private TextView attachedTextView() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        return attach(activity, new TextView(themed(activity)));
+    }
+
+    private TextView attach(Activity activity, TextView tv) {
+        activity.setContentView(tv);
+        layoutTextView(tv);
+        shadowOf(Looper.getMainLooper()).idle();
+        return tv;
+    }
+
+    private TextView layoutTextView(TextView tv) {
+        ChipSpanBindings.bindChipText(tv, Arrays.asList("Android", "iOS", "Java"));
+        tv.setMovementMethod(method);
+        tv.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.AT_MOST));
+        tv.layout(0, 0, tv.getMeasuredWidth(), tv.getMeasuredHeight());
+        return tv;
+    }
+
+    private static ChipSpan firstChip(TextView tv) {
+        Spannable text = (Spannable) tv.getText();
+        ChipSpan[] spans = text.getSpans(0, text.length(), ChipSpan.class);
+        assertNotNull(spans);
+        assertTrue(spans.length > 0);
+        return spans[0];
+    }
+
+    private static Rect chipRect(TextView tv, ChipSpan chip) {
+        Rect r = new Rect();
+        assertTrue(ChipLayoutIndex.of(tv).getChipBounds(chip, r));
+        r.offset(tv.getTotalPaddingLeft(), tv.getTotalPaddingTop());
+        return r;
+    }
+
+    private boolean touch(TextView tv, int action, int x, int y) {
+        long now = SystemClock.uptimeMillis();
+        MotionEvent event = MotionEvent.obtain(now, now, action, x, y, 0);
+        boolean handled = method.onTouchEvent(tv, (Spannable) tv.getText(), event);
+        event.recycle();
+        return handled;
+    }
+
+    private static class RecordingTextView extends TextView {
+        final Rect dirty = new Rect();
+
+        RecordingTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void invalidate(int l, int t, int r, int b) {
+            dirty.set(l, t, r, b);
+            super.invalidate(l, t, r, b);
+        }
+    }
+
+    /**
+     * 未attach的View每次postDelayed都会分配一个HandlerAction，那是框架的开销，这里只记住最后一个runnable
+     */
+    private static class QuietTextView extends TextView {
+        private Runnable posted;
+
+        QuietTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public boolean postDelayed(Runnable action, long delayMillis) {
+            posted = action;
+            return true;
+        }
+
+        @Override
+        public boolean removeCallbacks(Runnable action) {
+            if (posted == action) {
+                posted = null;
+            }
+            return true;
+        }
+    }
+}
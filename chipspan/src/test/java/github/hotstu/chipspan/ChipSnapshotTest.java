@@ -0,0 +1,172 @@
+package github.hotstu.chipspan;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Parcel;
+import android.text.Editable;
+import android.text.Spanned;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import github.hotstu.chipspan.testing.ChipTestSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 经过Parcel往返之后恢复的chip与保存时一致，尺寸只在指纹相同时复用
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ChipSnapshotTest {
+    private Context context;
+    private TextView source;
+
+    @Before
+    public void setUp() {
+        context = ChipTestSupport.themedContext();
+        source = new TextView(context);
+        ChipSpanBindings.bindChipText(source, Arrays.asList("Android", "iOS", "Java"));
+        ChipSpan[] chips = chips(source);
+        chips[0].setId(chips[2].getId() + 100);
+        chips[1].setEnabled(false);
+        chips[1].setSpaceHorizontal(48);
+        chips[1].setSpaceVertical(6);
+        chips[2].setPayload("not saved");
+        //只有前两个chip测量过
+        chips[0].getMeasuredWidth();
+        chips[1].getMeasuredWidth();
+    }
+
+    @Test
+    public void parcelRoundTrip_restoresChips() {
+        ChipSpan[] saved = chips(source);
+        ChipSnapshot snapshot = parcel(ChipSnapshot.of(source));
+        assertEquals(3, snapshot.size());
+
+        TextView target = new TextView(context);
+        target.setText("", TextView.BufferType.EDITABLE);
+        snapshot.restore(target);
+
+        assertTrue(target.getText() instanceof Editable);
+        assertEquals(source.getText().toString(), target.getText().toString());
+        ChipSpan[] restored = chips(target);
+        assertEquals(saved.length, restored.length);
+        for (int i = 0; i < saved.length; i++) {
+            Spanned from = (Spanned) source.getText();
+            Spanned to = (Spanned) target.getText();
+            assertEquals(from.getSpanStart(saved[i]), to.getSpanStart(restored[i]));
+            assertEquals(from.getSpanEnd(saved[i]), to.getSpanEnd(restored[i]));
+            assertEquals(saved[i].getId(), restored[i].getId());
+            assertEquals(saved[i].getText(), restored[i].getText());
+            assertEquals(saved[i].isEnabled(), restored[i].isEnabled());
+            assertEquals(saved[i].getSpaceHorizontal(), restored[i].getSpaceHorizontal());
+            assertEquals(saved[i].getSpaceVertical(), restored[i].getSpaceVertical());
+        }
+        //只复用已经测量过的尺寸
+        assertTrue(restored[0].isSized());
+        assertTrue(restored[1].isSized());
+        assertFalse(restored[2].isSized());
+    }
+
+    @Test
+    public void of_doesNotMeasure() {
+        ChipSpan unmeasured = chips(source)[2];
+        ChipSnapshot.of(source);
+        assertFalse(unmeasured.isSized());
+    }
+
+    @Test
+    public void restoredIds_areNotReusedByNewChips() {
+        ChipSnapshot snapshot = parcel(ChipSnapshot.of(source));
+        long max = 0;
+        for (ChipSpan chip : chips(source)) {
+            max = Math.max(max, chip.getId());
+        }
+        snapshot.build(context);
+        assertTrue(new ChipSpan(context, "Kotlin").getId() > max);
+    }
+
+    @Test
+    public void rotation_reusesSavedSizes() {
+        //两个context用同样的方式创建，只有方向和屏幕尺寸不同
+        Configuration portrait = new Configuration(context.getResources().getConfiguration());
+        portrait.orientation = Configuration.ORIENTATION_PORTRAIT;
+        Configuration landscape = new Configuration(portrait);
+        landscape.orientation = Configuration.ORIENTATION_LANDSCAPE;
+        landscape.screenWidthDp = portrait.screenHeightDp;
+        landscape.screenHeightDp = portrait.screenWidthDp;
+        Context before = ChipTestSupport.themed(context.createConfigurationContext(portrait));
+        Context after = ChipTestSupport.themed(context.createConfigurationContext(landscape));
+
+        TextView rotating = new TextView(before);
+        ChipSpanBindings.bindChipText(rotating, Arrays.asList("Android", "iOS"));
+        ChipSpan[] saved = chips(rotating);
+        for (ChipSpan chip : saved) {
+            chip.getMeasuredWidth();
+        }
+        ChipSnapshot snapshot = parcel(ChipSnapshot.of(rotating));
+
+        ChipDrawableCache cache = ChipDrawableCache.get(after);
+        int measureHits = cache.measureHitCount();
+        int measured = cache.measuredSize();
+        ChipSpan[] restored = spans(snapshot.build(after));
+        for (int i = 0; i < saved.length; i++) {
+            assertTrue(restored[i].isSized());
+            assertEquals(saved[i].getMeasuredWidth(), restored[i].getMeasuredWidth());
+            assertEquals(saved[i].getMeasuredHeight(), restored[i].getMeasuredHeight());
+            assertFalse(restored[i].isDrawableHeld());
+        }
+        //没有经过尺寸缓存，也没有创建drawable
+        assertEquals(measureHits, cache.measureHitCount());
+        assertEquals(measured, cache.measuredSize());
+    }
+
+    @Test
+    public void differentConfiguration_remeasures() {
+        ChipSnapshot snapshot = parcel(ChipSnapshot.of(source));
+        Configuration night = new Configuration(context.getResources().getConfiguration());
+        night.uiMode = (night.uiMode & ~Configuration.UI_MODE_NIGHT_MASK) | Configuration.UI_MODE_NIGHT_YES;
+        Context nightContext = ChipTestSupport.themed(context.createConfigurationContext(night));
+
+        ChipSpan[] restored = spans(snapshot.build(nightContext));
+        for (ChipSpan chip : restored) {
+            assertFalse(chip.isSized());
+        }
+    }
+
+    private static ChipSnapshot parcel(ChipSnapshot snapshot) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            snapshot.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return ChipSnapshot.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static ChipSpan[] chips(TextView tv) {
+        return spans((Spanned) tv.getText());
+    }
+
+    private static ChipSpan[] spans(final Spanned text) {
+        ChipSpan[] chips = text.getSpans(0, text.length(), ChipSpan.class);
+        Arrays.sort(chips, new Comparator<ChipSpan>() {
+            @Override
+            public int compare(ChipSpan o1, ChipSpan o2) {
+                return text.getSpanStart(o1) - text.getSpanStart(o2);
+            }
+        });
+        return chips;
+    }
+}
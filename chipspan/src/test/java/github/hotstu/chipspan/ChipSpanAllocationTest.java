@@ -0,0 +1,74 @@
+package github.hotstu.chipspan;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.style.DynamicDrawableSpan;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import github.hotstu.chipspan.testing.ChipTestSupport;
+
+import static github.hotstu.chipspan.testing.ChipTestSupport.steadyStateAllocatedBytes;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ChipSpan的measure/draw/state切换在稳定状态下不应该产生分配，三种垂直对齐方式各测一次
+ * (ALIGN_BASELINE需要读取paint的font metrics)。
+ * 使用native图形栈：legacy的ShadowCanvas会把每次draw记录到不断增长的列表里，自己就在分配。
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ChipSpanAllocationTest {
+    private static final int ITERATIONS = 20000;
+
+    private final int verticalAlignment;
+    private ChipSpan span;
+    private Canvas canvas;
+    private Paint paint;
+    private Paint.FontMetricsInt fm;
+    private int frame;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "verticalAlignment={0}")
+    public static Collection<Object[]> alignments() {
+        return Arrays.asList(new Object[][]{
+                {DynamicDrawableSpan.ALIGN_BOTTOM},
+                {DynamicDrawableSpan.ALIGN_BASELINE},
+                {DynamicDrawableSpan.ALIGN_CENTER},
+        });
+    }
+
+    public ChipSpanAllocationTest(int verticalAlignment) {
+        this.verticalAlignment = verticalAlignment;
+    }
+
+    @Before
+    public void setUp() {
+        span = new ChipSpan(ChipTestSupport.themedContext(), "Android", R.xml.standalone_chip_action, verticalAlignment);
+        canvas = new Canvas(Bitmap.createBitmap(400, 200, Bitmap.Config.ARGB_8888));
+        paint = new Paint();
+        fm = new Paint.FontMetricsInt();
+    }
+
+    @Test
+    public void measureDrawAndStateToggle_doNotAllocate() {
+        long allocated = steadyStateAllocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                span.setPressed((frame++ & 1) == 0);
+                span.getSize(paint, "Android ", 0, 7, fm);
+                span.draw(canvas, "Android ", 0, 7, 0, 0, 100, 120, paint);
+            }
+        }, ITERATIONS);
+        assertEquals("ChipSpan allocated bytes in " + ITERATIONS + " frames", 0, allocated);
+    }
+}
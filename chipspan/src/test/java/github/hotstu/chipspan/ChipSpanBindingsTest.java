@@ -0,0 +1,58 @@
+package github.hotstu.chipspan;
+
+import android.text.Spanned;
+import android.widget.TextView;
+
+import androidx.databinding.ObservableArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import github.hotstu.chipspan.testing.ChipTestSupport;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * bind:chipList的增量绑定与其他绑定方式之间的切换
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ChipSpanBindingsTest {
+    private TextView tv;
+    private ObservableArrayList<String> list;
+
+    @Before
+    public void setUp() {
+        tv = new TextView(ChipTestSupport.themedContext());
+        list = new ObservableArrayList<>();
+        list.addAll(Arrays.asList("Android", "iOS"));
+    }
+
+    @Test
+    public void bindingEmptyText_detachesPreviousList() {
+        ChipSpanBindings.bindChipList(tv, list);
+        ChipSpanBindings.bindChipText(tv, Collections.<String>emptyList());
+
+        list.add("Java");
+        assertEquals("", tv.getText().toString());
+    }
+
+    @Test
+    public void rebindingSameList_afterSameSizeEdit_rebuildsText() {
+        ChipSpanBindings.bindChipList(tv, list);
+        ChipSpan iOS = ((Spanned) tv.getText()).getSpans(0, tv.getText().length(), ChipSpan.class)[1];
+        //绕过列表直接替换chip，chip数量不变
+        ChipEditor.of(tv).replace(iOS, "Java");
+
+        ChipSpanBindings.bindChipList(tv, list);
+        assertEquals("Android iOS ", tv.getText().toString());
+        ChipSpan rebound = ((Spanned) tv.getText()).getSpans(0, tv.getText().length(), ChipSpan.class)[1];
+        assertEquals(1, ChipSpanBindings.positionOf(tv, rebound));
+    }
+}
@@ -0,0 +1,49 @@
+package github.hotstu.chipspan;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import github.hotstu.chipspan.testing.ChipTestSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 业务设置的id不会与之后自动分配的id重复；只实现必需方法的IChip仍然可用
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ChipSpanIdTest {
+
+    @Test
+    public void setId_isNeverReusedByLaterChips() {
+        Context context = ChipTestSupport.themedContext();
+        ChipSpan first = new ChipSpan(context, "Android");
+        long custom = first.getId() + 1000;
+        first.setId(custom);
+
+        ChipSpan second = new ChipSpan(context, "iOS");
+        assertTrue(second.getId() > custom);
+    }
+
+    @Test
+    public void minimalChip_hasNoIdAndPayload() {
+        IChip chip = new IChip() {
+            @Override
+            public void setPressed(boolean isPressed) {
+            }
+
+            @Override
+            public String getText() {
+                return "Android";
+            }
+        };
+        assertEquals(IChip.NO_ID, chip.getId());
+        assertNull(chip.getPayload());
+    }
+}
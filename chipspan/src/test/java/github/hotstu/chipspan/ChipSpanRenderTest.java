@@ -0,0 +1,293 @@
+package github.hotstu.chipspan;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.text.Spanned;
+import android.text.style.DynamicDrawableSpan;
+import android.view.View;
+import android.widget.TextView;
+
+import com.google.android.material.chip.ChipDrawable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import github.hotstu.chipspan.testing.ChipTestSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用Robolectric的native图形栈把ChipSpan画到bitmap上，并记录每次draw的耗时
+ * golden图片在测试中由参照渲染生成：新inflate的ChipDrawable按优化之前的ChipSpan.draw定位，
+ * 不依赖平台相关的字体栅格化结果；缓存、共享drawable等渲染优化必须与它逐像素一致，图集允许重采样的误差
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ChipSpanRenderTest {
+    private static final String ACTUAL_DIR = "build/outputs/golden";
+    private static final int[] STATE_PRESSED = new int[]{android.R.attr.state_selected};
+    private static final int[] STATE_ENABLED = new int[]{android.R.attr.state_enabled};
+    private static final int TIMED_DRAWS = 200;
+    /**
+     * 允许的单通道误差和不一致像素比例，抵消不同平台字体栅格化的细微差别
+     */
+    private static final int CHANNEL_TOLERANCE = 8;
+    private static final float PIXEL_TOLERANCE = 0.005f;
+
+    private Context context;
+    private Paint paint;
+    private long[] timings;
+    private int timingCount;
+
+    @Before
+    public void setUp() {
+        context = ChipTestSupport.themedContext();
+        paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(40);
+        timings = new long[TIMED_DRAWS];
+        ChipMetrics.setListener(new ChipMetrics.Listener() {
+            @Override
+            public void onChipDrawn(long durationNanos) {
+                if (timingCount < timings.length) {
+                    timings[timingCount++] = durationNanos;
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        ChipMetrics.setListener(null);
+        ChipDrawableCache.get(context).evictAll();
+        ChipAtlas.get(context).clear();
+    }
+
+    @Test
+    public void alignBottom() throws IOException {
+        verifyGolden("align_bottom", new ChipSpan(context, "Android", R.xml.standalone_chip_action));
+    }
+
+    @Test
+    public void alignBaseline() throws IOException {
+        verifyGolden("align_baseline", new ChipSpan(context, "Android", R.xml.standalone_chip_action,
+                DynamicDrawableSpan.ALIGN_BASELINE));
+    }
+
+    @Test
+    public void alignCenter() throws IOException {
+        verifyGolden("align_center", new ChipSpan(context, "Android", R.xml.standalone_chip_action,
+                DynamicDrawableSpan.ALIGN_CENTER));
+    }
+
+    @Test
+    public void customSpacing() throws IOException {
+        ChipSpan span = new ChipSpan(context, "Android", R.xml.standalone_chip_entry);
+        span.setSpaceHorizontal(48);
+        span.setSpaceVertical(6);
+        verifyGolden("custom_spacing", span);
+    }
+
+    @Test
+    public void pressed() throws IOException {
+        ChipSpan span = new ChipSpan(context, "Android", R.xml.standalone_chip_action);
+        span.setPressed(true);
+        verifyGolden("pressed", span);
+    }
+
+    @Test
+    public void atlasRendering_matchesDirectDraw() {
+        ChipSpan direct = new ChipSpan(context, "Android", R.xml.standalone_chip_action);
+        ChipSpan atlas = new ChipSpan(context, "Android", R.xml.standalone_chip_action);
+        atlas.setStatic(true);
+        Bitmap expected = timedRender(direct);
+        report("direct");
+        Bitmap actual = timedRender(atlas);
+        report("atlas");
+        //图集中的位图经过一次重采样，与直接绘制只能做到近似一致
+        assertTrue("atlas rendering differs from direct draw", similar(expected, actual));
+    }
+
+    @Test
+    public void releasedDrawable_rendersIdentically() {
+        ChipSpan span = new ChipSpan(context, "Android", R.xml.standalone_chip_action);
+        Bitmap before = render(span);
+        span.releaseDrawable();
+        ChipDrawableCache.get(context).evictAll();
+        assertSamePixels(before, render(span));
+    }
+
+    @Test
+    public void lazyBinding_measuresWithoutDrawables() {
+        TextView tv = new TextView(context);
+        ChipSpanBindings.bindChipText(tv, Arrays.asList("Android", "iOS", "Java"), R.xml.standalone_chip_action);
+        ChipSpanBindings.bindChipVirtualized(tv, true);
+        tv.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        tv.layout(0, 0, tv.getMeasuredWidth(), tv.getMeasuredHeight());
+
+        Spanned text = (Spanned) tv.getText();
+        ChipSpan[] spans = text.getSpans(0, text.length(), ChipSpan.class);
+        assertEquals(3, spans.length);
+        for (ChipSpan span : spans) {
+            //尺寸来自尺寸缓存，drawable等到第一次draw才创建
+            assertTrue(span.getMeasuredWidth() > 0);
+            assertTrue(!span.isDrawableHeld());
+        }
+    }
+
+    private void verifyGolden(String name, ChipSpan span) throws IOException {
+        Bitmap golden = reference(span);
+        Bitmap actual = timedRender(span);
+        report(name);
+        if (!samePixels(golden, actual)) {
+            write(golden, new File(ACTUAL_DIR, name + "_golden.png"));
+            write(actual, new File(ACTUAL_DIR, name + ".png"));
+            throw new AssertionError("rendering of " + name + " differs from golden, both written to "
+                    + new File(ACTUAL_DIR).getAbsolutePath());
+        }
+    }
+
+    /**
+     * 参照渲染：新inflate一个不共享的ChipDrawable，按优化之前ChipSpan.getSize/draw的算法定位，
+     * 不经过尺寸缓存、drawable缓存、图集和共享drawable的state恢复
+     */
+    private Bitmap reference(ChipSpan span) {
+        ChipDrawable chip = ChipDrawable.createFromResource(context, span.getResId());
+        chip.setText(span.getText());
+        chip.setBounds(0, 0, chip.getIntrinsicWidth(), chip.getIntrinsicHeight());
+        chip.setState(span.isPressed() ? STATE_PRESSED : STATE_ENABLED);
+        Rect bounds = chip.getBounds();
+        int descent = paint.getFontMetricsInt().descent;
+        int baseline = bounds.bottom + span.getSpaceVertical();
+        int bottom = baseline + descent;
+        Bitmap bitmap = Bitmap.createBitmap(bounds.right + span.getSpaceHorizontal(), bottom, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.WHITE);
+
+        int transY = (int) (bottom - bounds.bottom - span.getSpaceVertical() * .5f);
+        if (span.getVerticalAlignment() == DynamicDrawableSpan.ALIGN_BASELINE) {
+            transY -= descent;
+        } else if (span.getVerticalAlignment() == DynamicDrawableSpan.ALIGN_CENTER) {
+            transY = bottom / 2 - bounds.height() / 2;
+        }
+        canvas.translate(span.getSpaceHorizontal() * .5f, transY);
+        chip.draw(canvas);
+        return bitmap;
+    }
+
+    private Bitmap render(ChipSpan span) {
+        return render(span, 1);
+    }
+
+    /**
+     * 把一行只含这个chip的文本画到bitmap上draws次，返回最后一次的结果；
+     * 行高按span报告的font metrics加上paint的descent，每次draw之前清成白色，不计入draw的耗时
+     */
+    private Bitmap render(ChipSpan span, int draws) {
+        Paint.FontMetricsInt fm = new Paint.FontMetricsInt();
+        int width = span.getSize(paint, "Android", 0, 7, fm);
+        int descent = paint.getFontMetricsInt().descent;
+        int baseline = -fm.ascent;
+        int bottom = baseline + descent;
+        Bitmap bitmap = Bitmap.createBitmap(width, bottom, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        for (int i = 0; i < draws; i++) {
+            canvas.drawColor(Color.WHITE);
+            span.draw(canvas, "Android", 0, 7, 0, 0, baseline, bottom, paint);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 被比较的正是计时的那些draw画出来的结果
+     */
+    private Bitmap timedRender(ChipSpan span) {
+        timingCount = 0;
+        return render(span, TIMED_DRAWS);
+    }
+
+    private void report(String name) {
+        if (timingCount == 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(timings, timingCount);
+        Arrays.sort(sorted);
+        System.out.printf("%-16s draws=%d median=%.1fus p90=%.1fus%n", name, timingCount,
+                sorted[timingCount / 2] / 1000f, sorted[timingCount * 9 / 10] / 1000f);
+    }
+
+    private static void write(Bitmap bitmap, File file) throws IOException {
+        File dir = file.getParentFile();
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        OutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean samePixels(Bitmap expected, Bitmap actual) {
+        return expected.getWidth() == actual.getWidth() && expected.getHeight() == actual.getHeight()
+                && Arrays.equals(pixels(expected), pixels(actual));
+    }
+
+    private static void assertSamePixels(Bitmap expected, Bitmap actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int[] e = pixels(expected);
+        int[] a = pixels(actual);
+        for (int i = 0; i < e.length; i++) {
+            if (e[i] != a[i]) {
+                throw new AssertionError("pixel (" + i % expected.getWidth() + ", " + i / expected.getWidth()
+                        + ") differs: " + Integer.toHexString(e[i]) + " != " + Integer.toHexString(a[i]));
+            }
+        }
+    }
+
+    private static boolean similar(Bitmap expected, Bitmap actual) {
+        if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight()) {
+            return false;
+        }
+        int[] e = pixels(expected);
+        int[] a = pixels(actual);
+        int different = 0;
+        for (int i = 0; i < e.length; i++) {
+            if (channelDelta(e[i], a[i]) > CHANNEL_TOLERANCE) {
+                different++;
+            }
+        }
+        return different <= e.length * PIXEL_TOLERANCE;
+    }
+
+    private static int channelDelta(int c1, int c2) {
+        int delta = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            delta = Math.max(delta, Math.abs(((c1 >>> shift) & 0xff) - ((c2 >>> shift) & 0xff)));
+        }
+        return delta;
+    }
+
+    private static int[] pixels(Bitmap bitmap) {
+        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return pixels;
+    }
+}
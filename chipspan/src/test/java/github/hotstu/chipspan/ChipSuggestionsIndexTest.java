@@ -0,0 +1,63 @@
+package github.hotstu.chipspan;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 候选词索引：单词开头匹配、不区分大小写、排序规则、排除和数量限制
+ */
+public class ChipSuggestionsIndexTest {
+    private static final Set<String> NONE = Collections.emptySet();
+
+    private final ChipSuggestions.Index index = ChipSuggestions.Index.build(Arrays.asList(
+            "Ann Lee", "Annabel Smith", "Lee Ann", "Bob Annis", "anne", "Zed"));
+
+    @Test
+    public void matchesStartOfAnyWord_ignoringCase() {
+        assertEquals(Arrays.asList("anne", "Ann Lee", "Annabel Smith", "Lee Ann", "Bob Annis"),
+                index.query("ANN", NONE, 10));
+        assertEquals(Collections.singletonList("Annabel Smith"), index.query("smi", NONE, 10));
+    }
+
+    @Test
+    public void doesNotMatchInsideWords() {
+        assertTrue(index.query("nn", NONE, 10).isEmpty());
+        assertTrue(index.query("ed", NONE, 10).isEmpty());
+    }
+
+    @Test
+    public void candidateMatchingSeveralWords_isReturnedOnce() {
+        ChipSuggestions.Index repeated = ChipSuggestions.Index.build(Collections.singletonList("Ann Ann"));
+        assertEquals(Collections.singletonList("Ann Ann"), repeated.query("ann", NONE, 10));
+    }
+
+    @Test
+    public void duplicateCandidates_areReturnedOnce() {
+        ChipSuggestions.Index duplicated = ChipSuggestions.Index.build(Arrays.asList(
+                "an an", "an an", "Ann", "an an", "an el"));
+        assertEquals(Arrays.asList("Ann", "an an", "an el"), duplicated.query("an", NONE, 8));
+        assertEquals(Arrays.asList("Ann", "an an"), duplicated.query("an", NONE, 2));
+    }
+
+    @Test
+    public void excludesAndLimits() {
+        Set<String> excluded = new HashSet<>(Collections.singletonList("anne"));
+        List<String> result = index.query("ann", excluded, 2);
+        assertEquals(Arrays.asList("Ann Lee", "Annabel Smith"), result);
+    }
+
+    @Test
+    public void prefixLongerThanEveryKey_matchesNothing() {
+        assertTrue(index.query("zedd", NONE, 10).isEmpty());
+        assertEquals(Collections.singletonList("Zed"), index.query("zed", NONE, 10));
+        assertTrue(ChipSuggestions.Index.build(Collections.<String>emptyList()).query("a", NONE, 10).isEmpty());
+    }
+}
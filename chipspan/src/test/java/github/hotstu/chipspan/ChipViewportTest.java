@@ -0,0 +1,86 @@
+package github.hotstu.chipspan;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.text.Spanned;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static github.hotstu.chipspan.testing.ChipTestSupport.themed;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 滚出可见区域的chip释放drawable，包括在可见行不变的帧里重新取得drawable的chip
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ChipViewportTest {
+    private static final int COUNT = 60;
+
+    private TextView tv;
+    private ChipViewport viewport;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        tv = new TextView(themed(activity));
+        List<String> texts = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            texts.add("Chip " + i);
+        }
+        ChipSpanBindings.bindChipText(tv, texts);
+        ChipSpanBindings.bindChipVirtualized(tv, true);
+        activity.setContentView(tv, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 200));
+        shadowOf(Looper.getMainLooper()).idle();
+        viewport = (ChipViewport) tv.getTag(R.id.tag_chip_viewport);
+    }
+
+    @Test
+    public void scrolledOutChips_releaseDrawables() {
+        ChipSpan first = chips()[0];
+        viewport.onPreDraw();
+        first.getDrawable();
+
+        scrollToBottom();
+        assertFalse(first.isDrawableHeld());
+        assertTrue(chips()[COUNT - 1].getDrawable() != null);
+    }
+
+    @Test
+    public void drawableTakenWithoutRangeChange_isReleasedOnNextChange() {
+        viewport.onPreDraw();
+        //可见行不变的帧里，可见区域之外的chip被重绘、重新取得drawable
+        ChipSpan outside = chips()[COUNT / 2];
+        outside.getDrawable();
+        viewport.onPreDraw();
+        assertTrue(outside.isDrawableHeld());
+
+        tv.scrollTo(0, tv.getLayout().getLineBottom(0));
+        viewport.onPreDraw();
+        assertFalse(outside.isDrawableHeld());
+    }
+
+    private void scrollToBottom() {
+        tv.scrollTo(0, tv.getLayout().getHeight() - tv.getHeight());
+        viewport.onPreDraw();
+    }
+
+    private ChipSpan[] chips() {
+        Spanned text = (Spanned) tv.getText();
+        return text.getSpans(0, text.length(), ChipSpan.class);
+    }
+}
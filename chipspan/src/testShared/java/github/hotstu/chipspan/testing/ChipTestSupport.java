@@ -0,0 +1,54 @@
+package github.hotstu.chipspan.testing;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * chipspan和benchmark两个模块的测试共用的fixture：Material主题的context以及当前线程的分配统计
+ */
+public final class ChipTestSupport {
+    public static final int THEME = com.google.android.material.R.style.Theme_MaterialComponents_Light;
+    private static final int MEASURE_ROUNDS = 3;
+
+    private ChipTestSupport() {
+    }
+
+    public static Context themedContext() {
+        return themed(ApplicationProvider.<Context>getApplicationContext());
+    }
+
+    public static Context themed(Context base) {
+        return new ContextThemeWrapper(base, THEME);
+    }
+
+    /**
+     * 稳定状态下把frame执行iterations次所分配的字节数。先预热一遍，再测量若干轮取最小值：
+     * JIT编译、类加载这类一次性的分配只会落在某一轮里，每帧都有的分配则每一轮都有
+     */
+    public static long steadyStateAllocatedBytes(Runnable frame, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            frame.run();
+        }
+        long min = Long.MAX_VALUE;
+        for (int round = 0; round < MEASURE_ROUNDS && min > 0; round++) {
+            long start = allocatedBytes();
+            for (int i = 0; i < iterations; i++) {
+                frame.run();
+            }
+            min = Math.min(min, allocatedBytes() - start);
+        }
+        return min;
+    }
+
+    /**
+     * @return 当前线程到目前为止分配的字节数
+     */
+    public static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}